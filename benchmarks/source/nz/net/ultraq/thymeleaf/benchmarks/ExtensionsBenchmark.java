@@ -0,0 +1,200 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import nz.net.ultraq.thymeleaf.internal.Extensions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.model.IModel;
+import org.thymeleaf.model.IModelFactory;
+import org.thymeleaf.model.IText;
+import org.thymeleaf.templatemode.TemplateMode;
+
+/**
+ * Microbenchmarks of the model primitives in {@link Extensions} that the
+ * layout dialect's processors lean on, over synthetic models of various sizes
+ * and nesting depths.
+ * <p>
+ * The benchmarks that modify a model work on a fresh clone each time, so
+ * {@link #cloneModel} is there as the baseline to subtract from them.
+ *
+ * @author zhanhb
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExtensionsBenchmark {
+
+    private static IModelFactory createModelFactory() {
+        return new TemplateEngine().getConfiguration().getModelFactory(TemplateMode.HTML);
+    }
+
+    /**
+     * A {@code <div>} element containing whitespace-separated chains of nested
+     * {@code <div>} elements, about {@code size} events in total. Each chain
+     * has its own {@code id} so that it can be told apart from the others.
+     */
+    @State(Scope.Thread)
+    public static class Models {
+
+        /**
+         * Approximate number of events in the model.
+         */
+        @Param({"10", "1000", "100000"})
+        public int size;
+
+        /**
+         * How deeply the elements within the model are nested.
+         */
+        @Param({"1", "16"})
+        public int depth;
+
+        IModelFactory modelFactory;
+        IModel model;
+        IModel copy;
+        IModel padded;
+        IModel lastChild;
+        IModel insertion;
+
+        @Setup
+        public void setUp() {
+            modelFactory = createModelFactory();
+            model = modelFactory.createModel();
+            model.add(modelFactory.createOpenElementTag("div"));
+            int remaining = size - 3;
+            int lastChildIndex = -1;
+            for (int chain = 0; remaining > 0; chain++) {
+                int chainDepth = Math.max(1, Math.min(depth, (remaining - 1) / 4));
+                lastChildIndex = model.size() + 1;
+                addChain(chain, chainDepth);
+                remaining -= chainDepth * 4 + 1;
+            }
+            model.add(modelFactory.createText("\n"));
+            model.add(modelFactory.createCloseElementTag("div"));
+
+            copy = model.cloneModel();
+
+            padded = modelFactory.createModel(modelFactory.createText("\n\t"));
+            padded.addModel(model);
+            padded.add(modelFactory.createText("\n"));
+
+            lastChild = Extensions.getModel(model, lastChildIndex);
+
+            insertion = modelFactory.createModel();
+            insertion.add(modelFactory.createOpenElementTag("p"));
+            insertion.add(modelFactory.createText("Inserted"));
+            insertion.add(modelFactory.createCloseElementTag("p"));
+        }
+
+        private void addChain(int chain, int chainDepth) {
+            model.add(modelFactory.createText("\n\t"));
+            model.add(modelFactory.createOpenElementTag("div", "id", "chain-" + chain));
+            for (int i = 1; i < chainDepth; i++) {
+                model.add(modelFactory.createText("\n\t"));
+                model.add(modelFactory.createOpenElementTag("div"));
+            }
+            model.add(modelFactory.createText("Content"));
+            for (int i = 0; i < chainDepth; i++) {
+                model.add(modelFactory.createCloseElementTag("div"));
+                model.add(modelFactory.createText("\n"));
+            }
+        }
+
+    }
+
+    /**
+     * Text events with and without content.
+     */
+    @State(Scope.Thread)
+    public static class Texts {
+
+        IText whitespace;
+        IText text;
+
+        @Setup
+        public void setUp() {
+            IModelFactory modelFactory = createModelFactory();
+            whitespace = modelFactory.createText("\n\t\t\t\t");
+            text = modelFactory.createText("\n\t\tSome text content\n\t");
+        }
+
+    }
+
+    @Benchmark
+    public int sizeOfModelAt(Models models) {
+        return Extensions.sizeOfModelAt(models.model, 0);
+    }
+
+    @Benchmark
+    public IModel getModel(Models models) {
+        return Extensions.getModel(models.model, 0);
+    }
+
+    @Benchmark
+    public int findIndexOfModel(Models models) {
+        return Extensions.findIndexOfModel(models.model, models.lastChild);
+    }
+
+    @Benchmark
+    public boolean equals(Models models) {
+        return Extensions.equals(models.model, models.copy);
+    }
+
+    @Benchmark
+    public boolean equalsIgnoreWhitespace(Models models) {
+        return Extensions.equalsIgnoreWhitespace(models.model, models.copy);
+    }
+
+    @Benchmark
+    public IModel cloneModel(Models models) {
+        return models.padded.cloneModel();
+    }
+
+    @Benchmark
+    public IModel insertModelWithWhitespace(Models models) {
+        IModel model = models.model.cloneModel();
+        Extensions.insertModelWithWhitespace(model, 1, models.insertion, models.modelFactory);
+        return model;
+    }
+
+    @Benchmark
+    public IModel trim(Models models) {
+        IModel model = models.padded.cloneModel();
+        Extensions.trim(model);
+        return model;
+    }
+
+    @Benchmark
+    public void isWhitespace(Texts texts, Blackhole blackhole) {
+        blackhole.consume(Extensions.isWhitespace(texts.whitespace));
+        blackhole.consume(Extensions.isWhitespace(texts.text));
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import nz.net.ultraq.thymeleaf.LayoutDialect;
+import nz.net.ultraq.thymeleaf.decorators.SortingStrategy;
+import nz.net.ultraq.thymeleaf.decorators.strategies.GroupingStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.context.Context;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+/**
+ * Renders representative pages through a template engine with the layout
+ * dialect, one benchmark per kind of page. Templates are cached by the engine
+ * as they would be in production, so what's measured is the work done by the
+ * layout dialect's processors on every render.
+ *
+ * @author zhanhb
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutBenchmark {
+
+    /**
+     * The head sorting strategy to configure the layout dialect with.
+     */
+    @Param({"appending", "grouping"})
+    public String strategy;
+
+    private TemplateEngine templateEngine;
+    private Context context;
+
+    @Setup
+    @SuppressWarnings("deprecation")
+    public void setUp() {
+        SortingStrategy sortingStrategy = "grouping".equals(strategy)
+                ? new GroupingStrategy()
+                : new nz.net.ultraq.thymeleaf.decorators.strategies.AppendingStrategy();
+
+        ClassLoaderTemplateResolver templateResolver = new ClassLoaderTemplateResolver();
+        templateResolver.setPrefix("nz/net/ultraq/thymeleaf/benchmarks/templates/");
+        templateResolver.setSuffix(".html");
+        templateResolver.setTemplateMode(TemplateMode.HTML);
+        templateResolver.setCacheable(true);
+
+        templateEngine = new TemplateEngine();
+        templateEngine.setTemplateResolver(templateResolver);
+        templateEngine.addDialect(new LayoutDialect(sortingStrategy));
+
+        context = new Context();
+        context.setVariable("heading", "Benchmark");
+        context.setVariable("items", Arrays.asList("One", "Two", "Three", "Four", "Five"));
+    }
+
+    /**
+     * A content page decorating a layout, each with a full head and body.
+     *
+     * @return The rendered page.
+     */
+    @Benchmark
+    public String fullLayout() {
+        return templateEngine.process("Content", context);
+    }
+
+    /**
+     * The same page as {@link #fullLayout()}, rendered by as many threads as
+     * there are processors, to show up contention on the layout dialect's
+     * caches, which every render reads from.
+     *
+     * @return The rendered page.
+     */
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String fullLayoutConcurrent() {
+        return templateEngine.process("Content", context);
+    }
+
+    /**
+     * A content page at the bottom of a chain of layouts that each decorate the
+     * one above.
+     *
+     * @return The rendered page.
+     */
+    @Benchmark
+    public String deepHierarchy() {
+        return templateEngine.process("Deep-Content", context);
+    }
+
+    /**
+     * A page with many {@code layout:insert} and {@code layout:replace} calls,
+     * each passing a fragment to, or parameters to, the included fragment.
+     *
+     * @return The rendered page.
+     */
+    @Benchmark
+    public String manyInserts() {
+        return templateEngine.process("Inserts-Content", context);
+    }
+
+    /**
+     * A content page and layout with large {@code <head>} sections to merge.
+     *
+     * @return The rendered page.
+     */
+    @Benchmark
+    public String largeHead() {
+        return templateEngine.process("LargeHead-Content", context);
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import nz.net.ultraq.thymeleaf.index.LayoutIndex;
+import nz.net.ultraq.thymeleaf.index.LayoutIndexScanner;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Scans an application's templates and writes the layout index the layout
+ * dialect loads from the class path, so that the layouts and fragments a
+ * template uses are known before it's first rendered.
+ *
+ * @author zhanhb
+ */
+@Mojo(name = "index", defaultPhase = LifecyclePhase.PROCESS_RESOURCES, threadSafe = true)
+public class LayoutIndexMojo extends AbstractMojo {
+
+    /**
+     * Directory of the templates, as template names are worked out relative
+     * to it.
+     */
+    @Parameter(defaultValue = "${project.basedir}/src/main/resources/templates", required = true)
+    private File templateDirectory;
+
+    /**
+     * File name suffix of the templates, as configured on the template
+     * resolver.
+     */
+    @Parameter(defaultValue = ".html", required = true)
+    private String suffix;
+
+    /**
+     * Prefix the layout dialect is configured with.
+     */
+    @Parameter(defaultValue = "layout", required = true)
+    private String dialectPrefix;
+
+    /**
+     * Encoding of the template files.
+     */
+    @Parameter(defaultValue = "${project.build.sourceEncoding}")
+    private String encoding;
+
+    /**
+     * Where to write the layout index.
+     */
+    @Parameter(defaultValue = "${project.build.outputDirectory}/" + LayoutIndex.DEFAULT_RESOURCE, required = true)
+    private File outputFile;
+
+    @Parameter(property = "thymeleaf-layout.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            getLog().info("Skipping the layout index");
+            return;
+        }
+        if (!templateDirectory.isDirectory()) {
+            getLog().info("No templates found in " + templateDirectory + ", skipping the layout index");
+            return;
+        }
+
+        Charset charset = encoding != null && !encoding.isEmpty() ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+        try {
+            LayoutIndex index = new LayoutIndexScanner(dialectPrefix, suffix).scan(templateDirectory, charset);
+            File outputDirectory = outputFile.getParentFile();
+            if (outputDirectory != null && !outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+                throw new MojoExecutionException("Unable to create directory " + outputDirectory);
+            }
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(outputFile), StandardCharsets.UTF_8)) {
+                index.write(writer);
+            }
+            getLog().info("Wrote the layout index of " + index.getTemplateNames().size() + " templates to " + outputFile);
+        } catch (IOException ex) {
+            throw new MojoExecutionException("Unable to build the layout index of " + templateDirectory, ex);
+        }
+    }
+
+}
@@ -15,17 +15,51 @@
  */
 package nz.net.ultraq.thymeleaf;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 import nz.net.ultraq.thymeleaf.decorators.DecorateProcessor;
+import nz.net.ultraq.thymeleaf.decorators.DecorationPlanCache;
 import nz.net.ultraq.thymeleaf.decorators.SortingStrategy;
+import nz.net.ultraq.thymeleaf.decorators.TitlePatternCache;
 import nz.net.ultraq.thymeleaf.decorators.TitlePatternProcessor;
 import nz.net.ultraq.thymeleaf.fragments.CollectFragmentProcessor;
 import nz.net.ultraq.thymeleaf.fragments.FragmentProcessor;
+import nz.net.ultraq.thymeleaf.index.LayoutIndex;
+import nz.net.ultraq.thymeleaf.index.LayoutIndexScanner;
 import nz.net.ultraq.thymeleaf.includes.InsertProcessor;
 import nz.net.ultraq.thymeleaf.includes.ReplaceProcessor;
+import nz.net.ultraq.thymeleaf.internal.DialectPrefixes;
+import nz.net.ultraq.thymeleaf.internal.TemplateModelCache;
+import nz.net.ultraq.thymeleaf.models.TemplateDependencyGraph;
+import nz.net.ultraq.thymeleaf.models.TemplateFragmentIndex;
+import nz.net.ultraq.thymeleaf.models.TemplateModelFinder;
+import nz.net.ultraq.thymeleaf.models.VariableDeclarationCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.TemplateSpec;
+import org.thymeleaf.context.EngineContext;
+import org.thymeleaf.context.IEngineContext;
 import org.thymeleaf.dialect.AbstractProcessorDialect;
+import org.thymeleaf.dialect.IExecutionAttributeDialect;
+import org.thymeleaf.engine.TemplateData;
+import org.thymeleaf.engine.TemplateModel;
 import org.thymeleaf.processor.IProcessor;
 import org.thymeleaf.standard.processor.StandardXmlNsTagProcessor;
 import org.thymeleaf.templatemode.TemplateMode;
@@ -37,14 +71,209 @@ import org.thymeleaf.templatemode.TemplateMode;
  * @author zhanhb
  * @author Emanuel Rabina
  */
-public class LayoutDialect extends AbstractProcessorDialect {
+public class LayoutDialect extends AbstractProcessorDialect implements IExecutionAttributeDialect {
 
     public static final String DIALECT_NAME = "Layout";
     public static final String DIALECT_PREFIX = "layout";
     public static final int DIALECT_PRECEDENCE = 10;
 
+    private static final Logger logger = LoggerFactory.getLogger(LayoutDialect.class);
+
+    // Layout structure worked out at build time, if the application has one
+    @Nullable
+    private static LayoutIndex loadLayoutIndex() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader == null) {
+            classLoader = LayoutDialect.class.getClassLoader();
+        }
+        try {
+            return LayoutIndex.load(classLoader, LayoutIndex.DEFAULT_RESOURCE);
+        } catch (IOException ex) {
+            logger.warn("Unable to load the layout index {}, continuing without it", LayoutIndex.DEFAULT_RESOURCE, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Looks up the given templates ahead of time on the given executor, so that
+     * the layouts they decorate and the templates they take fragments from are
+     * already parsed and cached by the time the application starts taking
+     * traffic.
+     * <p>
+     * Nothing is rendered and no expressions are run. Each template's
+     * {@code layout:decorate} chain and its {@code layout:insert} and
+     * {@code layout:replace} references whose template names are literals are
+     * followed through the same lookups the layout dialect's processors make,
+     * so they end up in Thymeleaf's template cache under the same keys, with
+     * fragment indexes for the referenced templates. The structure of each
+     * template is taken from the layout index if the application has one, or
+     * read from the template otherwise. Each template is looked at only once.
+     * <p>
+     * Templates that fail to be looked up are logged as warnings and don't
+     * stop the others from being warmed up.
+     *
+     * @param templateEngine Engine the layout dialect was added to.
+     * @param templateNames Names of the templates to warm up.
+     * @param executor Executor to look up the templates on.
+     * @return The number of the given templates warmed up without error.
+     * @throws InterruptedException If interrupted while waiting for the
+     * templates to be warmed up.
+     */
+    public static int warmUp(TemplateEngine templateEngine, Collection<String> templateNames, Executor executor)
+            throws InterruptedException {
+        final IEngineConfiguration configuration = templateEngine.getConfiguration();
+        final LayoutIndex layoutIndex = LayoutIndex.forConfiguration(configuration);
+        String dialectPrefix = DialectPrefixes.resolve(configuration, LayoutDialect.class);
+        final LayoutIndexScanner scanner = new LayoutIndexScanner(dialectPrefix != null ? dialectPrefix : DIALECT_PREFIX, "");
+        final Set<String> warmed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(16));
+
+        Set<String> templatesToWarm = new LinkedHashSet<>(templateNames);
+        final CountDownLatch latch = new CountDownLatch(templatesToWarm.size());
+        final AtomicInteger succeeded = new AtomicInteger();
+        final Set<String> failed = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(4));
+        for (final String templateName : templatesToWarm) {
+            Runnable task = () -> {
+                try {
+                    warmUp(configuration, templateDataOf(configuration, templateName), null, layoutIndex, scanner, warmed);
+                    succeeded.incrementAndGet();
+                } catch (RuntimeException ex) {
+                    failed.add(templateName);
+                    logger.warn("Unable to warm up template {}", templateName, ex);
+                } finally {
+                    latch.countDown();
+                }
+            };
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException ex) {
+                failed.add(templateName);
+                logger.warn("Unable to warm up template {}, the executor rejected it", templateName);
+                latch.countDown();
+            }
+        }
+        latch.await();
+
+        if (!failed.isEmpty()) {
+            logger.info("Warmed up {} of {} templates, could not warm up {}",
+                    succeeded.get(), templatesToWarm.size(), failed);
+        }
+        return succeeded.get();
+    }
+
+    /**
+     * Returns the template data a template has when it's being rendered, which
+     * lookups made from the template are cached against. The template manager
+     * resolves the template and hands its data to the context before reading
+     * anything, so processing stops there, without parsing the template or
+     * adding anything to Thymeleaf's template cache.
+     *
+     * @param configuration
+     * @param templateName
+     * @return Data of the template.
+     */
+    private static TemplateData templateDataOf(IEngineConfiguration configuration, String templateName) {
+        IEngineContext context = new EngineContext(configuration, null, null, Locale.getDefault(),
+                Collections.<String, Object>emptyMap()) {
+            @Override
+            public void setTemplateData(TemplateData templateData) {
+                super.setTemplateData(templateData);
+                if (templateData != null) {
+                    throw new TemplateDataResolved(templateData);
+                }
+            }
+        };
+        try {
+            configuration.getTemplateManager().parseAndProcess(new TemplateSpec(templateName, (TemplateMode) null),
+                    context, new StringWriter());
+        } catch (TemplateDataResolved resolved) {
+            return resolved.templateData;
+        }
+        throw new IllegalStateException("Template " + templateName + " was processed without being resolved");
+    }
+
+    /**
+     * Makes the lookups the layout dialect's processors make while rendering a
+     * template, then does the same for the templates it looks up.
+     *
+     * @param configuration
+     * @param templateData Data of the template to warm up.
+     * @param templateModel Model of the entire template if it's already been
+     * looked up, otherwise {@code null}.
+     * @param layoutIndex
+     * @param scanner Reads the template structure when not in the index.
+     * @param warmed Names of the templates already warmed up.
+     */
+    private static void warmUp(IEngineConfiguration configuration, TemplateData templateData,
+            @Nullable TemplateModel templateModel, @Nullable LayoutIndex layoutIndex,
+            LayoutIndexScanner scanner, Set<String> warmed) {
+        String templateName = templateData.getTemplate();
+        if (!warmed.add(templateName)) {
+            return;
+        }
+        TemplateModelFinder templateModelFinder = new TemplateModelFinder(new EngineContext(configuration,
+                templateData, null, Locale.getDefault(), Collections.<String, Object>emptyMap()));
+
+        LayoutIndex.Entry entry = layoutIndex != null ? layoutIndex.getEntry(templateName) : null;
+        if (entry == null) {
+            if (templateModel == null) {
+                templateModel = templateModelFinder.findTemplate(templateName);
+            }
+            entry = scanner.scan(templateName, templateModel);
+        }
+
+        // The decorate processor loads the whole content template and its layout,
+        // the layout then being processed as its own template
+        if (entry.getDecorateTemplate() != null) {
+            templateModelFinder.findTemplate(templateName);
+            TemplateModel layoutModel = templateModelFinder.findTemplate(entry.getDecorateTemplate());
+            warmUp(configuration, layoutModel.getTemplateData(), layoutModel, layoutIndex, scanner, warmed);
+        }
+
+        // The insert/replace processors find fragments through the fragment index
+        // of the referenced template, which is then processed as its own template
+        for (String referencedTemplate : entry.getReferencedTemplates()) {
+            TemplateFragmentIndex fragmentIndex = templateModelFinder.findFragments(referencedTemplate);
+            warmUp(configuration, fragmentIndex.getTemplateData(), fragmentIndex.getTemplateModel(),
+                    layoutIndex, scanner, warmed);
+        }
+    }
+
+    /**
+     * Evicts a changed template from the caches of a template engine, along
+     * with every template that depends on it through the layouts it decorates
+     * or the fragments it uses. Other templates stay cached, so this suits
+     * reloading templates during development without clearing every cache.
+     *
+     * @param templateEngine Engine the layout dialect was added to.
+     * @param templateName Name of the template that changed.
+     * @return Names of the templates evicted, starting with the changed one.
+     */
+    public static Set<String> invalidate(TemplateEngine templateEngine, String templateName) {
+        IEngineConfiguration configuration = templateEngine.getConfiguration();
+        Set<String> templateNames = new LinkedHashSet<>();
+        templateNames.add(templateName);
+        TemplateDependencyGraph dependencyGraph = TemplateDependencyGraph.forConfiguration(configuration);
+        if (dependencyGraph != null) {
+            templateNames.addAll(dependencyGraph.getDependents(templateName));
+        }
+
+        TemplateModelCache templateModelCache = TemplateModelCache.forConfiguration(configuration);
+        if (templateModelCache != null) {
+            templateModelCache.invalidate(templateNames);
+        }
+        DecorationPlanCache decorationPlanCache = DecorationPlanCache.forConfiguration(configuration);
+        if (decorationPlanCache != null) {
+            decorationPlanCache.invalidate(templateNames);
+        }
+        for (String name : templateNames) {
+            templateEngine.clearTemplateCacheFor(name);
+        }
+        return templateNames;
+    }
+
     private final boolean autoHeadMerging;
     private final SortingStrategy sortingStrategy;
+    private final LayoutDialectMetrics metrics;
 
     /**
      * Constructor, configure the layout dialect.
@@ -52,11 +281,25 @@ public class LayoutDialect extends AbstractProcessorDialect {
      * @param sortingStrategy
      * @param autoHeadMerging Experimental option, set to {@code false} to skip
      * the automatic merging of an HTML {@code <head>} section.
+     * @param metrics Listener for timings of the layout dialect's processors
+     * and its template lookups.
      */
-    public LayoutDialect(SortingStrategy sortingStrategy, boolean autoHeadMerging) {
+    public LayoutDialect(SortingStrategy sortingStrategy, boolean autoHeadMerging, LayoutDialectMetrics metrics) {
         super(DIALECT_NAME, DIALECT_PREFIX, DIALECT_PRECEDENCE);
         this.sortingStrategy = sortingStrategy;
         this.autoHeadMerging = autoHeadMerging;
+        this.metrics = Objects.requireNonNull(metrics, "metrics");
+    }
+
+    /**
+     * Constructor, configure the layout dialect.
+     *
+     * @param sortingStrategy
+     * @param autoHeadMerging Experimental option, set to {@code false} to skip
+     * the automatic merging of an HTML {@code <head>} section.
+     */
+    public LayoutDialect(SortingStrategy sortingStrategy, boolean autoHeadMerging) {
+        this(sortingStrategy, autoHeadMerging, LayoutDialectMetrics.NONE);
     }
 
     /**
@@ -76,6 +319,35 @@ public class LayoutDialect extends AbstractProcessorDialect {
         this(new nz.net.ultraq.thymeleaf.decorators.strategies.AppendingStrategy());
     }
 
+    /**
+     * Returns the objects shared by the layout dialect's processors. This is
+     * called once for every engine configuration the dialect is added to, so
+     * each template engine gets its own template model, decoration plan,
+     * {@code th:with} and title pattern caches, its own table of dialect
+     * prefixes, and its own graph of template dependencies. The metrics
+     * listener is shared by all of them. If the application has a layout index
+     * made at build time, it is loaded here too and starts off the dependency
+     * graph.
+     *
+     * @return Execution attributes of the layout dialect.
+     */
+    @Override
+    public Map<String, Object> getExecutionAttributes() {
+        Map<String, Object> executionAttributes = new HashMap<>(16);
+        executionAttributes.put(TemplateModelCache.EXECUTION_ATTRIBUTE_NAME, new TemplateModelCache());
+        executionAttributes.put(DecorationPlanCache.EXECUTION_ATTRIBUTE_NAME, new DecorationPlanCache());
+        executionAttributes.put(VariableDeclarationCache.EXECUTION_ATTRIBUTE_NAME, new VariableDeclarationCache());
+        executionAttributes.put(TitlePatternCache.EXECUTION_ATTRIBUTE_NAME, new TitlePatternCache());
+        executionAttributes.put(DialectPrefixes.EXECUTION_ATTRIBUTE_NAME, new DialectPrefixes());
+        executionAttributes.put(LayoutDialectMetrics.EXECUTION_ATTRIBUTE_NAME, metrics);
+        LayoutIndex layoutIndex = loadLayoutIndex();
+        if (layoutIndex != null) {
+            executionAttributes.put(LayoutIndex.EXECUTION_ATTRIBUTE_NAME, layoutIndex);
+        }
+        executionAttributes.put(TemplateDependencyGraph.EXECUTION_ATTRIBUTE_NAME, new TemplateDependencyGraph(layoutIndex));
+        return executionAttributes;
+    }
+
     /**
      * Returns the layout dialect's processors.
      *
@@ -108,4 +380,17 @@ public class LayoutDialect extends AbstractProcessorDialect {
         ));
     }
 
+    // Stops the processing of a template during warm-up once its data is known
+    @SuppressWarnings("serial")
+    private static class TemplateDataResolved extends RuntimeException {
+
+        private final transient TemplateData templateData;
+
+        TemplateDataResolved(TemplateData templateData) {
+            super(null, null, false, false);
+            this.templateData = templateData;
+        }
+
+    }
+
 }
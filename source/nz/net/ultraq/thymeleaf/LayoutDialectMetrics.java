@@ -0,0 +1,201 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf;
+
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.engine.AttributeName;
+
+/**
+ * Listener for timings and counts of the work done by the layout dialect,
+ * given to the {@link LayoutDialect} constructor. Override the methods for
+ * the measurements of interest and pass them on to a metrics library.
+ * Methods may be called from several threads at once.
+ * <p>
+ * Without a listener the dialect uses {@link #NONE}, which skips taking any
+ * timings at all.
+ *
+ * @author zhanhb
+ */
+public abstract class LayoutDialectMetrics {
+
+    public static final String EXECUTION_ATTRIBUTE_NAME = "LayoutDialect::Metrics";
+
+    /**
+     * Amounts of work counted against a template.
+     */
+    public enum Counter {
+
+        /**
+         * Template events copied into new models.
+         */
+        EVENTS_CLONED,
+
+        /**
+         * Models made by cloning or to view parts of another model.
+         */
+        MODELS_CREATED,
+
+        /**
+         * Templates parsed by the template manager, because they weren't
+         * already cached.
+         */
+        TEMPLATES_PARSED,
+
+        /**
+         * Children of a content {@code <head>} element merged into a layout's.
+         */
+        HEAD_CHILDREN_MERGED,
+
+        /**
+         * Fragments found in a template for use by the layout or included page.
+         */
+        FRAGMENTS_FOUND
+
+    }
+
+    /**
+     * Listener that ignores everything.
+     */
+    public static final LayoutDialectMetrics NONE = new LayoutDialectMetrics(false) {
+    };
+
+    /**
+     * Returns the listener registered by the layout dialect with the given
+     * configuration.
+     *
+     * @param configuration
+     * @return The listener for the configuration, or {@link #NONE} if the
+     * layout dialect didn't register one.
+     */
+    public static LayoutDialectMetrics forConfiguration(@Nullable IEngineConfiguration configuration) {
+        if (configuration == null) {
+            return NONE;
+        }
+        Map<String, Object> executionAttributes = configuration.getExecutionAttributes();
+        Object metrics = executionAttributes != null ? executionAttributes.get(EXECUTION_ATTRIBUTE_NAME) : null;
+        return metrics instanceof LayoutDialectMetrics ? (LayoutDialectMetrics) metrics : NONE;
+    }
+
+    private final boolean enabled;
+
+    protected LayoutDialectMetrics() {
+        this(true);
+    }
+
+    private LayoutDialectMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Returns whether this listener takes timings and counts, which is
+     * everything but {@link #NONE}, so callers can skip working out what would
+     * only be reported to it.
+     *
+     * @return {@code true} if the listener is being told about the work done.
+     */
+    public final boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the time a processor started its work at.
+     *
+     * @return Current value of the system timer, or {@code 0} if timings
+     * aren't being taken.
+     */
+    public final long startTiming() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Reports the time taken by a processor that started its work at the
+     * given time.
+     *
+     * @param attributeName Attribute of the processor.
+     * @param context
+     * @param start Value returned by {@link #startTiming()}.
+     */
+    public final void stopTiming(AttributeName attributeName, ITemplateContext context, long start) {
+        if (enabled) {
+            processorTimed(attributeName.getAttributeName(), context.getTemplateData().getTemplate(),
+                    System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Counts an amount of work done while processing the template of the
+     * given context.
+     *
+     * @param context
+     * @param counter
+     * @param amount
+     */
+    public final void count(ITemplateContext context, Counter counter, long amount) {
+        if (enabled) {
+            counted(context.getTemplateData().getTemplate(), counter, amount);
+        }
+    }
+
+    /**
+     * Counts an amount of work done against the given template.
+     *
+     * @param templateName
+     * @param counter
+     * @param amount
+     */
+    public final void count(String templateName, Counter counter, long amount) {
+        if (enabled) {
+            counted(templateName, counter, amount);
+        }
+    }
+
+    /**
+     * Called after a layout dialect processor has run, whether or not it
+     * completed normally.
+     *
+     * @param processorName Name of the processor's attribute, eg:
+     * {@code decorate} or {@code title-pattern}.
+     * @param templateName Template being processed.
+     * @param elapsedNanos Time taken by the processor, in nanoseconds.
+     */
+    public void processorTimed(String processorName, String templateName, long elapsedNanos) {
+    }
+
+    /**
+     * Called each time a template or template fragment is looked up, with
+     * whether it was found in Thymeleaf's template cache or had to be parsed.
+     *
+     * @param templateName
+     * @param hit {@code true} if the model came from the cache.
+     */
+    public void templateLookup(String templateName, boolean hit) {
+    }
+
+    /**
+     * Called with amounts of work done by the layout dialect, eg: the number
+     * of events cloned when decorating a layout.
+     *
+     * @param templateName Template the work is counted against.
+     * @param counter What is being counted.
+     * @param amount
+     */
+    public void counted(String templateName, Counter counter, long amount) {
+    }
+
+}
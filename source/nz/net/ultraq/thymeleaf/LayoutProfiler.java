@@ -0,0 +1,271 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A metrics listener that adds up what the layout dialect costs for each
+ * template: processor time, template lookups and the {@link Counter counted}
+ * work. Work is counted against the template being processed, except for
+ * cloning a layout, which is counted against the layout. A snapshot of the
+ * totals shows which templates are responsible for most of the overhead.
+ * <p>
+ * To keep the cost of profiling down on busy sites, a sample interval records
+ * each measurement with a chance of one in that many, scaling the recorded
+ * ones up so that the totals are estimates of the real ones. Each thread
+ * makes its own random choice, so sampling adds no contention between
+ * threads and doesn't fall into step with the order measurements come in.
+ *
+ * @author zhanhb
+ */
+public class LayoutProfiler extends LayoutDialectMetrics {
+
+    private static final Counter[] COUNTERS = Counter.values();
+
+    private final int sampleInterval;
+    private final ConcurrentMap<String, Costs> costs = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor, create a profiler that records every measurement.
+     */
+    public LayoutProfiler() {
+        this(1);
+    }
+
+    /**
+     * Constructor, create a profiler that records about one in every
+     * {@code sampleInterval} measurements.
+     *
+     * @param sampleInterval
+     */
+    public LayoutProfiler(int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("Sample interval must be at least 1, was " + sampleInterval);
+        }
+        this.sampleInterval = sampleInterval;
+    }
+
+    private boolean sample() {
+        return sampleInterval == 1 || ThreadLocalRandom.current().nextInt(sampleInterval) == 0;
+    }
+
+    private Costs costsOf(String templateName) {
+        String key = String.valueOf(templateName);
+        Costs templateCosts = costs.get(key);
+        if (templateCosts == null) {
+            Costs newCosts = new Costs();
+            templateCosts = costs.putIfAbsent(key, newCosts);
+            if (templateCosts == null) {
+                templateCosts = newCosts;
+            }
+        }
+        return templateCosts;
+    }
+
+    @Override
+    public void processorTimed(String processorName, String templateName, long elapsedNanos) {
+        if (sample()) {
+            Costs templateCosts = costsOf(templateName);
+            templateCosts.invocations.addAndGet(sampleInterval);
+            templateCosts.nanos.addAndGet(elapsedNanos * sampleInterval);
+        }
+    }
+
+    @Override
+    public void templateLookup(String templateName, boolean hit) {
+        if (sample()) {
+            Costs templateCosts = costsOf(templateName);
+            (hit ? templateCosts.lookupHits : templateCosts.lookupMisses).addAndGet(sampleInterval);
+        }
+    }
+
+    @Override
+    public void counted(String templateName, Counter counter, long amount) {
+        if (sample()) {
+            costsOf(templateName).counters.addAndGet(counter.ordinal(), amount * sampleInterval);
+        }
+    }
+
+    /**
+     * Returns the costs recorded so far, the costliest templates by processor
+     * time first.
+     *
+     * @return Costs of every template seen since the profiler was created or
+     * last reset.
+     */
+    public List<TemplateProfile> snapshot() {
+        List<TemplateProfile> profiles = new ArrayList<>(costs.size());
+        for (Map.Entry<String, Costs> entry : costs.entrySet()) {
+            profiles.add(new TemplateProfile(entry.getKey(), entry.getValue()));
+        }
+        Collections.sort(profiles, new Comparator<TemplateProfile>() {
+            @Override
+            public int compare(TemplateProfile profile1, TemplateProfile profile2) {
+                int result = Long.compare(profile2.processorNanos, profile1.processorNanos);
+                return result != 0 ? result : profile1.templateName.compareTo(profile2.templateName);
+            }
+        });
+        return profiles;
+    }
+
+    /**
+     * Forget all the costs recorded so far.
+     */
+    public void reset() {
+        costs.clear();
+    }
+
+    /**
+     * Write a tab-separated report of the current snapshot, one line per
+     * template after a line of column headings.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeReport(Appendable out) throws IOException {
+        out.append("template\tinvocations\ttime-ms");
+        for (Counter counter : COUNTERS) {
+            out.append('\t').append(counter.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        }
+        out.append("\tlookup-hits\tlookup-misses\n");
+        for (TemplateProfile profile : snapshot()) {
+            out.append(profile.templateName)
+                    .append('\t').append(Long.toString(profile.processorInvocations))
+                    .append('\t').append(String.format(Locale.ROOT, "%.3f", profile.processorNanos / 1e6));
+            for (long count : profile.counts) {
+                out.append('\t').append(Long.toString(count));
+            }
+            out.append('\t').append(Long.toString(profile.lookupHits))
+                    .append('\t').append(Long.toString(profile.lookupMisses))
+                    .append('\n');
+        }
+    }
+
+    /**
+     * Write the report of the current snapshot to a file, replacing anything
+     * already in it.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void dump(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writeReport(writer);
+        }
+    }
+
+    /**
+     * Running totals for a single template.
+     */
+    private static final class Costs {
+
+        final AtomicLong invocations = new AtomicLong();
+        final AtomicLong nanos = new AtomicLong();
+        final AtomicLong lookupHits = new AtomicLong();
+        final AtomicLong lookupMisses = new AtomicLong();
+        final AtomicLongArray counters = new AtomicLongArray(COUNTERS.length);
+
+    }
+
+    /**
+     * The costs of a single template at the time of a snapshot.
+     */
+    public static final class TemplateProfile {
+
+        private final String templateName;
+        private final long processorInvocations;
+        private final long processorNanos;
+        private final long lookupHits;
+        private final long lookupMisses;
+        private final long[] counts;
+
+        TemplateProfile(String templateName, Costs costs) {
+            this.templateName = templateName;
+            this.processorInvocations = costs.invocations.get();
+            this.processorNanos = costs.nanos.get();
+            this.lookupHits = costs.lookupHits.get();
+            this.lookupMisses = costs.lookupMisses.get();
+            this.counts = new long[COUNTERS.length];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = costs.counters.get(i);
+            }
+        }
+
+        public String getTemplateName() {
+            return templateName;
+        }
+
+        /**
+         * @return Number of layout dialect processors run in the template.
+         */
+        public long getProcessorInvocations() {
+            return processorInvocations;
+        }
+
+        /**
+         * @return Total time taken by layout dialect processors in the
+         * template, in nanoseconds.
+         */
+        public long getProcessorNanos() {
+            return processorNanos;
+        }
+
+        /**
+         * @return Number of times the template was found in Thymeleaf's
+         * template cache.
+         */
+        public long getLookupHits() {
+            return lookupHits;
+        }
+
+        /**
+         * @return Number of times the template had to be parsed, because it
+         * wasn't in Thymeleaf's template cache.
+         */
+        public long getLookupMisses() {
+            return lookupMisses;
+        }
+
+        public long getCount(Counter counter) {
+            return counts[counter.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            return "TemplateProfile{" + templateName + ", invocations=" + processorInvocations
+                    + ", nanos=" + processorNanos + '}';
+        }
+
+    }
+
+}
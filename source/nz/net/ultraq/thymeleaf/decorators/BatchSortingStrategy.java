@@ -0,0 +1,44 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.decorators;
+
+import java.util.List;
+import org.thymeleaf.model.IModel;
+
+/**
+ * A {@link SortingStrategy} that can also place all of the children of a
+ * source {@code <head>} element at once. Implementing this is optional, but
+ * lets the {@code <head>} decorator build the result in a single pass instead
+ * of inserting each child into the {@code <head>} model in turn.
+ *
+ * @author zhanhb
+ */
+public interface BatchSortingStrategy extends SortingStrategy {
+
+    /**
+     * Returns the children of the {@code <head>} element that results from
+     * placing every one of the child models into the given {@code <head>}.
+     * This must be the same as calling {@link #findPositionForModel} and
+     * inserting each child model, with whitespace, in turn.
+     *
+     * @param headModel Model of a {@code <head>} element.
+     * @param childModels Children of the source {@code <head>} element other
+     * than its {@code <title>}, in order.
+     * @return The children of the merged {@code <head>} element, in order.
+     */
+    List<IModel> mergeModels(IModel headModel, List<IModel> childModels);
+
+}
@@ -18,21 +18,26 @@ package nz.net.ultraq.thymeleaf.decorators;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics;
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics.Counter;
 import nz.net.ultraq.thymeleaf.decorators.html.HtmlDocumentDecorator;
 import nz.net.ultraq.thymeleaf.decorators.xml.XmlDocumentDecorator;
 import nz.net.ultraq.thymeleaf.expressions.ExpressionProcessor;
 import nz.net.ultraq.thymeleaf.fragments.FragmentFinder;
 import nz.net.ultraq.thymeleaf.fragments.FragmentMap;
 import nz.net.ultraq.thymeleaf.internal.Extensions;
+import nz.net.ultraq.thymeleaf.internal.FlightRecorderEvent;
+import nz.net.ultraq.thymeleaf.internal.IndexedModel;
 import nz.net.ultraq.thymeleaf.models.TemplateModelFinder;
+import nz.net.ultraq.thymeleaf.models.extensions.ModelView;
 import org.thymeleaf.context.IContext;
 import org.thymeleaf.context.IExpressionContext;
 import org.thymeleaf.context.ITemplateContext;
 import org.thymeleaf.engine.AttributeName;
-import org.thymeleaf.engine.TemplateData;
 import org.thymeleaf.engine.TemplateModel;
 import org.thymeleaf.model.IModel;
 import org.thymeleaf.model.IProcessableElementTag;
+import org.thymeleaf.model.ITemplateEvent;
 import org.thymeleaf.processor.element.AbstractAttributeModelProcessor;
 import org.thymeleaf.processor.element.IElementModelStructureHandler;
 import org.thymeleaf.standard.StandardDialect;
@@ -123,48 +128,44 @@ public class DecorateProcessor extends AbstractAttributeModelProcessor {
     }
 
     /**
-     * Locates the template to decorate and, once decorated, inserts it into the
-     * processing chain.
+     * Decorate the layout template with the content template, replacing the
+     * root element model with the result.
      *
      * @param context
      * @param model
      * @param attributeName
-     * @param attributeValue
-     * @param structureHandler
+     * @param contentTemplate
+     * @param decorateTemplate
+     * @return The fragments found in the content template.
      */
-    @Override
-    protected void doProcess(ITemplateContext context, IModel model, AttributeName attributeName,
-            String attributeValue, IElementModelStructureHandler structureHandler) {
-
-        TemplateModelFinder templateModelFinder = new TemplateModelFinder(context);
-
-        // Load the entirety of this template so we can access items outside of the root element
-        String contentTemplateName = context.getTemplateData().getTemplate();
-        IModel contentTemplate = templateModelFinder.findTemplate(contentTemplateName).cloneModel();
+    private Map<String, List<IModel>> decorate(ITemplateContext context, IModel model, AttributeName attributeName,
+            TemplateModel contentTemplate, TemplateModel decorateTemplate) {
 
-        // Check that the root element is the same as the one currently being processed
-        IProcessableElementTag contentRootEvent = (IProcessableElementTag) Extensions.find(contentTemplate, event -> event instanceof IProcessableElementTag);
-        IProcessableElementTag rootElement = (IProcessableElementTag) Extensions.first(model);
-        if (!rootElementsEqual(contentRootEvent, rootElement, context)) {
-            throw new IllegalArgumentException("layout:decorate/data-layout-decorate must appear in the root element of your template");
-        }
+        IModel contentTemplateModel = contentTemplate.cloneModel();
+        LayoutDialectMetrics metrics = LayoutDialectMetrics.forConfiguration(context.getConfiguration());
+        metrics.count(context, Counter.MODELS_CREATED, 1);
+        metrics.count(context, Counter.EVENTS_CLONED, contentTemplateModel.size());
 
         // Remove the decorate processor from the root element
+        IProcessableElementTag rootElement = (IProcessableElementTag) Extensions.first(model);
         if (rootElement.hasAttribute(attributeName)) {
             rootElement = context.getModelFactory().removeAttribute(rootElement, attributeName);
             model.replace(0, rootElement);
         }
-        Extensions.replaceModel(contentTemplate, Extensions.findIndexOf(contentTemplate, event -> event instanceof IProcessableElementTag), model);
+        int rootIndex = Extensions.findIndexOf(contentTemplateModel, event -> event instanceof IProcessableElementTag);
+        Extensions.replaceModel(contentTemplateModel, rootIndex, model);
 
-        // Locate the template to decorate
-        FragmentExpression decorateTemplateExpression = new ExpressionProcessor(context).parseFragmentExpression(attributeValue);
-        TemplateModel decorateTemplate = templateModelFinder.findTemplate(decorateTemplateExpression);
-        TemplateData decorateTemplateData = decorateTemplate.getTemplateData();
         IModel clone = decorateTemplate.cloneModel();
+        String decorateTemplateName = decorateTemplate.getTemplateData().getTemplate();
+        metrics.count(decorateTemplateName, Counter.MODELS_CREATED, 1);
+        metrics.count(decorateTemplateName, Counter.EVENTS_CLONED, clone.size());
 
         // Gather all fragment parts from this page to apply to the new document
-        // after decoration has taken place
-        Map<String, List<IModel>> pageFragments = new FragmentFinder(getDialectPrefix()).findFragments(model);
+        // after decoration has taken place.  The root element model is about to
+        // be replaced, so search its copy in the content template instead, which
+        // nothing modifies from here on.
+        Map<String, List<IModel>> pageFragments = new FragmentFinder(getDialectPrefix(), context)
+                .findFragments(new ModelView(contentTemplateModel, rootIndex, model.size()));
 
         // Choose the decorator to use based on template mode, then apply it
         TemplateMode templateMode = getTemplateMode();
@@ -177,26 +178,89 @@ public class DecorateProcessor extends AbstractAttributeModelProcessor {
                     "Layout dialect cannot be applied to the " + templateMode + " template mode, only HTML and XML template modes are currently supported"
             );
         }
-        IModel resultTemplate = decorator.decorate(clone, contentTemplate);
+        // The content template is only read from here on, so index it once for
+        // the many element lookups made while merging it into the layout
+        IModel resultTemplate = decorator.decorate(clone, IndexedModel.of(contentTemplateModel));
         Extensions.replaceModel(model, 0, resultTemplate);
-        structureHandler.setTemplateData(decorateTemplateData);
+        return pageFragments;
+    }
 
-        // Save layout fragments for use later by layout:fragment processors
-        FragmentMap.setForNode(context, structureHandler, pageFragments);
+    /**
+     * Locates the template to decorate and, once decorated, inserts it into the
+     * processing chain.
+     *
+     * @param context
+     * @param model
+     * @param attributeName
+     * @param attributeValue
+     * @param structureHandler
+     */
+    @Override
+    protected void doProcess(ITemplateContext context, IModel model, AttributeName attributeName,
+            String attributeValue, IElementModelStructureHandler structureHandler) {
+        LayoutDialectMetrics metrics = LayoutDialectMetrics.forConfiguration(context.getConfiguration());
+        long start = metrics.startTiming();
+        Object recorderEvent = FlightRecorderEvent.DECORATE.begin();
+        try {
+            TemplateModelFinder templateModelFinder = new TemplateModelFinder(context);
+
+            // Load the entirety of this template so we can access items outside of the root element
+            String contentTemplateName = context.getTemplateData().getTemplate();
+            TemplateModel contentTemplate = templateModelFinder.findTemplate(contentTemplateName);
 
-        // Scope variables in fragment definition to template.  Parameters *must* be
-        // named as there is no mechanism for setting their name at the target
-        // layout/template.
-        if (decorateTemplateExpression.hasParameters()) {
-            if (decorateTemplateExpression.hasSyntheticParameters()) {
-                throw new IllegalArgumentException("Fragment parameters must be named when used with layout:decorate/data-layout-decorate");
+            // Check that the root element is the same as the one currently being processed
+            IProcessableElementTag contentRootEvent = (IProcessableElementTag) Extensions.find(contentTemplate, event -> event instanceof IProcessableElementTag);
+            IProcessableElementTag rootElement = (IProcessableElementTag) Extensions.first(model);
+            if (!rootElementsEqual(contentRootEvent, rootElement, context)) {
+                throw new IllegalArgumentException("layout:decorate/data-layout-decorate must appear in the root element of your template");
             }
-            AssignationSequence parameters = decorateTemplateExpression.getParameters();
-            if (parameters != null) {
-                for (Assignation parameter : parameters) {
-                    structureHandler.setLocalVariable((String) parameter.getLeft().execute(context), parameter.getRight().execute(context));
+
+            // Locate the template to decorate
+            FragmentExpression decorateTemplateExpression = new ExpressionProcessor(context).parseFragmentExpression(attributeValue);
+            TemplateModel decorateTemplate = templateModelFinder.findTemplate(decorateTemplateExpression);
+
+            // Decorating the same templates with the same root element gives the same
+            // result every time, so replay that if it's already been worked out
+            DecorationPlanCache planCache = DecorationPlanCache.forConfiguration(context.getConfiguration());
+            DecorationPlanCache.Key planKey = new DecorationPlanCache.Key(this, contentTemplate, decorateTemplate);
+            DecorationPlan plan = planCache != null ? planCache.get(planKey) : null;
+
+            Map<String, List<IModel>> pageFragments;
+            if (plan != null && plan.matches(model, context)) {
+                pageFragments = plan.apply(context, model);
+            } else if (planCache != null && planCache.isCacheable(planKey)) {
+                ITemplateEvent[] input = DecorationPlan.eventsOf(model);
+                boolean[] titlesPresent = DecorationPlan.titlesPresent(context);
+                pageFragments = decorate(context, model, attributeName, contentTemplate, decorateTemplate);
+                planCache.put(planKey, new DecorationPlan(input, model, pageFragments, titlesPresent, context));
+            } else {
+                pageFragments = decorate(context, model, attributeName, contentTemplate, decorateTemplate);
+            }
+            structureHandler.setTemplateData(decorateTemplate.getTemplateData());
+            if (recorderEvent != null) {
+                FlightRecorderEvent.DECORATE.commit(recorderEvent, contentTemplateName,
+                        decorateTemplate.getTemplateData().getTemplate(), contentTemplate.size(), decorateTemplate.size());
+            }
+
+            // Save layout fragments for use later by layout:fragment processors
+            FragmentMap.setForNode(context, structureHandler, pageFragments);
+
+            // Scope variables in fragment definition to template.  Parameters *must* be
+            // named as there is no mechanism for setting their name at the target
+            // layout/template.
+            if (decorateTemplateExpression.hasParameters()) {
+                if (decorateTemplateExpression.hasSyntheticParameters()) {
+                    throw new IllegalArgumentException("Fragment parameters must be named when used with layout:decorate/data-layout-decorate");
+                }
+                AssignationSequence parameters = decorateTemplateExpression.getParameters();
+                if (parameters != null) {
+                    for (Assignation parameter : parameters) {
+                        structureHandler.setLocalVariable((String) parameter.getLeft().execute(context), parameter.getRight().execute(context));
+                    }
                 }
             }
+        } finally {
+            metrics.stopTiming(attributeName, context, start);
         }
     }
 
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.decorators;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import nz.net.ultraq.thymeleaf.internal.Extensions;
+import org.thymeleaf.context.IContext;
+import org.thymeleaf.context.IEngineContext;
+import org.thymeleaf.model.IModel;
+import org.thymeleaf.model.ITemplateEvent;
+
+/**
+ * The outcome of decorating one template with another: the events that result
+ * from the decoration, the fragments found in the content template, and the
+ * title parts saved for the {@code layout:title-pattern} processor. Replaying
+ * a plan gives the same result as decorating the same events again, without
+ * doing any of the work of merging the documents.
+ *
+ * @author zhanhb
+ */
+public class DecorationPlan {
+
+    private static final String[] TITLE_KEYS = {
+        TitlePatternProcessor.CONTENT_TITLE_KEY,
+        TitlePatternProcessor.LAYOUT_TITLE_KEY
+    };
+
+    /**
+     * Returns which of the title parts used by the {@code layout:title-pattern}
+     * processor have already been set in the context, as the decoration only
+     * sets those that haven't.
+     *
+     * @param context
+     * @return Flags for each of the title parts.
+     */
+    static boolean[] titlesPresent(IContext context) {
+        boolean[] result = new boolean[TITLE_KEYS.length];
+        for (int i = 0; i < TITLE_KEYS.length; i++) {
+            result[i] = context.containsVariable(TITLE_KEYS[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of the events of the given model, to record them before
+     * the model is modified.
+     *
+     * @param model
+     * @return The model's events.
+     */
+    static ITemplateEvent[] eventsOf(IModel model) {
+        ITemplateEvent[] result = new ITemplateEvent[model.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = model.get(i);
+        }
+        return result;
+    }
+
+    private static boolean sameEvent(ITemplateEvent event1, ITemplateEvent event2) {
+        return event1 == event2 || Extensions.equals(event1, event2);
+    }
+
+    private final ITemplateEvent[] input;
+    private final ITemplateEvent[] result;
+    private final Map<String, List<IModel>> fragments;
+    private final boolean[] titlesPresent;
+    private final Object[] titles;
+
+    /**
+     * Constructor, record the outcome of a decoration.
+     *
+     * @param input Events of the root element before decoration.
+     * @param result The root element model after decoration.
+     * @param fragments Fragments found in the content template.
+     * @param titlesPresent Which title parts were present in the context
+     * before decoration.
+     * @param context The context after decoration.
+     */
+    DecorationPlan(ITemplateEvent[] input, IModel result, Map<String, List<IModel>> fragments, boolean[] titlesPresent, IContext context) {
+        this.input = input;
+        this.result = eventsOf(result);
+        Map<String, List<IModel>> fragmentsCopy = new LinkedHashMap<>(fragments.size() * 4 / 3 + 1);
+        for (Map.Entry<String, List<IModel>> entry : fragments.entrySet()) {
+            fragmentsCopy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+        }
+        this.fragments = Collections.unmodifiableMap(fragmentsCopy);
+        this.titlesPresent = titlesPresent;
+        this.titles = new Object[TITLE_KEYS.length];
+        for (int i = 0; i < TITLE_KEYS.length; i++) {
+            if (!titlesPresent[i]) {
+                titles[i] = context.getVariable(TITLE_KEYS[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns whether this plan applies to the given model and context, which
+     * is when the model has the same events as the one the plan was made from
+     * and the same title parts are already set.
+     *
+     * <p>
+     * Every event is compared, as the model being decorated further up a
+     * decorate chain already holds whatever the page below merged into it, so
+     * pages decorated by the same layouts can differ anywhere in the model.
+     * Events taken unchanged from the template cache are the same objects, so
+     * most of them compare by identity.
+     *
+     * @param model
+     * @param context
+     * @return {@code true} if replaying this plan gives the same result as
+     * decorating the model.
+     */
+    public boolean matches(IModel model, IContext context) {
+        if (model.size() != input.length) {
+            return false;
+        }
+        for (int i = 0; i < input.length; i++) {
+            if (!sameEvent(model.get(i), input[i])) {
+                return false;
+            }
+        }
+        for (int i = 0; i < TITLE_KEYS.length; i++) {
+            if (context.containsVariable(TITLE_KEYS[i]) != titlesPresent[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replay this plan, replacing the events of the model with those of the
+     * decorated result and setting any title parts in the context.
+     *
+     * @param context
+     * @param model
+     * @return The fragments found in the content template.
+     */
+    public Map<String, List<IModel>> apply(IContext context, IModel model) {
+        model.reset();
+        for (ITemplateEvent event : result) {
+            model.add(event);
+        }
+        for (int i = 0; i < TITLE_KEYS.length; i++) {
+            if (titles[i] instanceof IModel) {
+                ((IEngineContext) context).setVariable(TITLE_KEYS[i], ((IModel) titles[i]).cloneModel());
+            } else if (titles[i] != null) {
+                ((IEngineContext) context).setVariable(TITLE_KEYS[i], titles[i]);
+            }
+        }
+        return fragments;
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.decorators;
+
+import java.util.Collection;
+import java.util.Map;
+import javax.annotation.Nullable;
+import nz.net.ultraq.thymeleaf.internal.BoundedCache;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.cache.ICacheEntryValidity;
+import org.thymeleaf.engine.TemplateModel;
+import org.thymeleaf.processor.IProcessor;
+
+/**
+ * Cache of decoration plans, one per engine configuration. Plans are kept
+ * against the very template models they were made from, as handed out by
+ * Thymeleaf's template cache, so clearing that cache or a template changing
+ * results in new models and so a new plan, which replaces the plan made from
+ * the old models of the same templates.
+ *
+ * @author zhanhb
+ */
+public class DecorationPlanCache {
+
+    public static final String EXECUTION_ATTRIBUTE_NAME = "LayoutDialect::DecorationPlanCache";
+    public static final int DEFAULT_MAX_SIZE = 200;
+
+    /**
+     * Returns the cache registered by the layout dialect with the given
+     * configuration.
+     *
+     * @param configuration
+     * @return The cache for the configuration, or {@code null} if the layout
+     * dialect didn't register one.
+     */
+    @Nullable
+    public static DecorationPlanCache forConfiguration(@Nullable IEngineConfiguration configuration) {
+        if (configuration == null) {
+            return null;
+        }
+        Map<String, Object> executionAttributes = configuration.getExecutionAttributes();
+        Object cache = executionAttributes != null ? executionAttributes.get(EXECUTION_ATTRIBUTE_NAME) : null;
+        return cache instanceof DecorationPlanCache ? (DecorationPlanCache) cache : null;
+    }
+
+    private static String templateName(TemplateModel templateModel) {
+        return templateModel.getTemplateData().getTemplate();
+    }
+
+    private static boolean isCacheable(TemplateModel templateModel) {
+        ICacheEntryValidity validity = templateModel.getTemplateData().getValidity();
+        return validity != null && validity.isCacheable();
+    }
+
+    private final BoundedCache<Key, DecorationPlan> plans;
+
+    public DecorationPlanCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public DecorationPlanCache(int maxSize) {
+        this.plans = new BoundedCache<>(maxSize);
+    }
+
+    /**
+     * Returns the plan for decorating a layout with a content template.
+     *
+     * @param key
+     * @return The cached plan, or {@code null} if there isn't one.
+     */
+    @Nullable
+    public DecorationPlan get(Key key) {
+        return plans.get(key);
+    }
+
+    /**
+     * Returns whether a plan for the given templates can be cached, which is
+     * only if the template resolver allows both templates to be cached.
+     *
+     * @param key
+     * @return {@code true} if a plan for the key can be cached.
+     */
+    public boolean isCacheable(Key key) {
+        return isCacheable(key.contentTemplate) && isCacheable(key.layoutTemplate);
+    }
+
+    /**
+     * Caches a plan if both its templates can be cached, evicting any plan made
+     * by the same processor from earlier models of the same templates.
+     *
+     * @param key
+     * @param plan
+     */
+    public void put(Key key, DecorationPlan plan) {
+        if (isCacheable(key)) {
+            for (Key existing : plans.keys()) {
+                if (existing.supersededBy(key)) {
+                    plans.remove(existing);
+                }
+            }
+            plans.put(key, plan);
+        }
+    }
+
+    /**
+     * Evicts the plans made from any of the given templates, be it as the
+     * content or the layout template.
+     *
+     * @param templateNames
+     */
+    public void invalidate(Collection<String> templateNames) {
+        for (Key key : plans.keys()) {
+            if (templateNames.contains(templateName(key.contentTemplate))
+                    || templateNames.contains(templateName(key.layoutTemplate))) {
+                plans.remove(key);
+            }
+        }
+    }
+
+    public void clear() {
+        plans.clear();
+    }
+
+    public int size() {
+        return plans.size();
+    }
+
+    /**
+     * Identifies a decoration by the processor doing it, which determines the
+     * sorting strategy and head merging used, and the template models
+     * involved. All are compared by identity.
+     */
+    public static final class Key {
+
+        private final IProcessor processor;
+        private final TemplateModel contentTemplate;
+        private final TemplateModel layoutTemplate;
+        private final int hash;
+
+        public Key(IProcessor processor, TemplateModel contentTemplate, TemplateModel layoutTemplate) {
+            this.processor = processor;
+            this.contentTemplate = contentTemplate;
+            this.layoutTemplate = layoutTemplate;
+            this.hash = (System.identityHashCode(processor) * 31
+                    + System.identityHashCode(contentTemplate)) * 31
+                    + System.identityHashCode(layoutTemplate);
+        }
+
+        /**
+         * Returns whether the given key is for the same processor and templates
+         * as this one, but different models of them.
+         *
+         * @param other
+         * @return {@code true} if the other key replaces this one.
+         */
+        boolean supersededBy(Key other) {
+            return processor == other.processor
+                    && !equals(other)
+                    && templateName(contentTemplate).equals(templateName(other.contentTemplate))
+                    && templateName(layoutTemplate).equals(templateName(other.layoutTemplate));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return processor == other.processor
+                    && contentTemplate == other.contentTemplate
+                    && layoutTemplate == other.layoutTemplate;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.decorators;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import org.thymeleaf.model.IModel;
+import org.thymeleaf.model.IModelFactory;
+
+/**
+ * A {@code layout:title-pattern} value broken up into its literal text and
+ * title tokens. Title patterns almost always come from a layout template, so
+ * the same few are seen over and over, and are only broken up once for each
+ * engine configuration, in its {@link TitlePatternCache}.
+ *
+ * @author zhanhb
+ */
+final class TitlePattern {
+
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("\\$(LAYOUT|DECORATOR|CONTENT)_TITLE");
+
+    /**
+     * Returns the compiled form of the given title pattern, from the given
+     * cache if it's been compiled before.
+     *
+     * @param titlePattern
+     * @param cache Cache of the engine configuration, or {@code null} to always
+     * compile the pattern.
+     * @return The title pattern's tokens.
+     */
+    static TitlePattern compile(String titlePattern, @Nullable TitlePatternCache cache) {
+        TitlePattern result = cache != null ? cache.get(titlePattern) : null;
+        if (result == null) {
+            result = new TitlePattern(titlePattern);
+            if (cache != null) {
+                cache.put(titlePattern, result);
+            }
+        }
+        return result;
+    }
+
+    // Literal text, or null in the place of a title token
+    private final String[] texts;
+
+    // For title tokens, whether it's the layout title (or the deprecated
+    // decorator title) rather than the content title
+    private final boolean[] layoutTitles;
+
+    private TitlePattern(String titlePattern) {
+        List<String> textList = new ArrayList<>(5);
+        List<Boolean> layoutTitleList = new ArrayList<>(5);
+        Matcher matcher = TOKEN_PATTERN.matcher(titlePattern);
+        int start = 0;
+        while (matcher.find()) {
+            if (matcher.start() > start) {
+                textList.add(titlePattern.substring(start, matcher.start()));
+                layoutTitleList.add(false);
+            }
+            textList.add(null);
+            layoutTitleList.add(!"CONTENT".equals(matcher.group(1)));
+            start = matcher.end();
+        }
+        if (start < titlePattern.length()) {
+            textList.add(titlePattern.substring(start));
+            layoutTitleList.add(false);
+        }
+
+        texts = textList.toArray(new String[textList.size()]);
+        layoutTitles = new boolean[texts.length];
+        for (int i = 0; i < layoutTitles.length; i++) {
+            layoutTitles[i] = layoutTitleList.get(i);
+        }
+    }
+
+    /**
+     * Adds the text and titles this pattern is made up of to the given model.
+     *
+     * @param titleModel
+     * @param modelFactory
+     * @param layoutTitle
+     * @param contentTitle
+     */
+    void addTo(IModel titleModel, IModelFactory modelFactory, IModel layoutTitle, IModel contentTitle) {
+        for (int i = 0; i < texts.length; i++) {
+            if (texts[i] != null) {
+                titleModel.add(modelFactory.createText(texts[i]));
+            } else {
+                titleModel.addModel(layoutTitles[i] ? layoutTitle : contentTitle);
+            }
+        }
+    }
+
+}
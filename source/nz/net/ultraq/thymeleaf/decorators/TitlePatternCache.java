@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.decorators;
+
+import java.util.Map;
+import javax.annotation.Nullable;
+import nz.net.ultraq.thymeleaf.internal.BoundedCache;
+import org.thymeleaf.IEngineConfiguration;
+
+/**
+ * Cache of the {@code layout:title-pattern} values broken up by the
+ * {@link TitlePatternProcessor}, one per engine configuration.
+ *
+ * @author zhanhb
+ */
+public class TitlePatternCache {
+
+    public static final String EXECUTION_ATTRIBUTE_NAME = "LayoutDialect::TitlePatternCache";
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    /**
+     * Returns the cache registered by the layout dialect with the given
+     * configuration.
+     *
+     * @param configuration
+     * @return The cache for the configuration, or {@code null} if the layout
+     * dialect didn't register one.
+     */
+    @Nullable
+    public static TitlePatternCache forConfiguration(@Nullable IEngineConfiguration configuration) {
+        if (configuration == null) {
+            return null;
+        }
+        Map<String, Object> executionAttributes = configuration.getExecutionAttributes();
+        Object cache = executionAttributes != null ? executionAttributes.get(EXECUTION_ATTRIBUTE_NAME) : null;
+        return cache instanceof TitlePatternCache ? (TitlePatternCache) cache : null;
+    }
+
+    private final BoundedCache<String, TitlePattern> patterns;
+
+    public TitlePatternCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public TitlePatternCache(int maxSize) {
+        this.patterns = new BoundedCache<>(maxSize);
+    }
+
+    /**
+     * Returns a title pattern previously broken up.
+     *
+     * @param titlePattern
+     * @return The cached pattern, or {@code null} if there isn't one.
+     */
+    @Nullable
+    TitlePattern get(String titlePattern) {
+        return patterns.get(titlePattern);
+    }
+
+    void put(String titlePattern, TitlePattern compiled) {
+        patterns.put(titlePattern, compiled);
+    }
+
+    public void clear() {
+        patterns.clear();
+    }
+
+    public int size() {
+        return patterns.size();
+    }
+
+}
@@ -16,8 +16,7 @@
 package nz.net.ultraq.thymeleaf.decorators;
 
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics;
 import nz.net.ultraq.thymeleaf.internal.Extensions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,9 +44,6 @@ public class TitlePatternProcessor extends AbstractAttributeTagProcessor {
 
     @Deprecated
     private static final String TOKEN_DECORATOR_TITLE = "$DECORATOR_TITLE";
-    // private static final String TOKEN_CONTENT_TITLE   = "$CONTENT_TITLE";
-    private static final String TOKEN_LAYOUT_TITLE = "$LAYOUT_TITLE";
-    private static final Pattern TOKEN_PATTERN = Pattern.compile("(\\$(LAYOUT|DECORATOR|CONTENT)_TITLE)");
 
     private static final AtomicBoolean warned = new AtomicBoolean();
 
@@ -81,51 +77,45 @@ public class TitlePatternProcessor extends AbstractAttributeTagProcessor {
     @Override
     protected void doProcess(ITemplateContext context, IProcessableElementTag tag,
             AttributeName attributeName, String attributeValue, IElementTagStructureHandler structureHandler) {
-        // Ensure this attribute is only on the <title> element
-        if (!"title".equals(tag.getElementCompleteName())) {
-            throw new IllegalArgumentException(attributeName + " processor should only appear in a <title> element");
-        }
-
-        String titlePattern = attributeValue;
-        IModelFactory modelFactory = context.getModelFactory();
+        LayoutDialectMetrics metrics = LayoutDialectMetrics.forConfiguration(context.getConfiguration());
+        long start = metrics.startTiming();
+        try {
+            // Ensure this attribute is only on the <title> element
+            if (!"title".equals(tag.getElementCompleteName())) {
+                throw new IllegalArgumentException(attributeName + " processor should only appear in a <title> element");
+            }
 
-        IModel contentTitle = (IModel) context.getVariable(CONTENT_TITLE_KEY);
-        IModel layoutTitle = (IModel) context.getVariable(LAYOUT_TITLE_KEY);
+            String titlePattern = attributeValue;
+            IModelFactory modelFactory = context.getModelFactory();
 
-        if (!StringUtils.isEmpty(titlePattern) && titlePattern.contains(TOKEN_DECORATOR_TITLE)) {
-            if (warned.compareAndSet(false, true)) {
-                logger.warn(
-                        "The $DECORATOR_TITLE token is deprecated and will be removed in the next major version of the layout dialect.  "
-                        + "Please use the $LAYOUT_TITLE token instead to future-proof your code.  "
-                        + "See https://github.com/ultraq/thymeleaf-layout-dialect/issues/95 for more information."
-                );
-            }
-        }
+            IModel contentTitle = (IModel) context.getVariable(CONTENT_TITLE_KEY);
+            IModel layoutTitle = (IModel) context.getVariable(LAYOUT_TITLE_KEY);
 
-        // Break the title pattern up into tokens to map to their respective models
-        IModel titleModel = modelFactory.createModel();
-        if (Extensions.asBoolean(layoutTitle) && Extensions.asBoolean(contentTitle)) {
-            Matcher matcher = TOKEN_PATTERN.matcher(titlePattern);
-            while (matcher.find()) {
-                String text = titlePattern.substring(matcher.regionStart(), matcher.start());
-                if (!StringUtils.isEmpty(text)) {
-                    titleModel.add(modelFactory.createText(text));
+            if (!StringUtils.isEmpty(titlePattern) && titlePattern.contains(TOKEN_DECORATOR_TITLE)) {
+                if (warned.compareAndSet(false, true)) {
+                    logger.warn(
+                            "The $DECORATOR_TITLE token is deprecated and will be removed in the next major version of the layout dialect.  "
+                            + "Please use the $LAYOUT_TITLE token instead to future-proof your code.  "
+                            + "See https://github.com/ultraq/thymeleaf-layout-dialect/issues/95 for more information."
+                    );
                 }
-                String token = matcher.group(1);
-                titleModel.addModel(TOKEN_LAYOUT_TITLE.equals(token) || TOKEN_DECORATOR_TITLE.equals(token) ? layoutTitle : contentTitle);
-                matcher.region(matcher.regionStart() + text.length() + token.length(), titlePattern.length());
             }
-            String remainingText = titlePattern.substring(matcher.regionStart());
-            if (!StringUtils.isEmpty(remainingText)) {
-                titleModel.add(modelFactory.createText(remainingText));
+
+            // Map the title pattern's tokens to their respective models
+            IModel titleModel = modelFactory.createModel();
+            if (Extensions.asBoolean(layoutTitle) && Extensions.asBoolean(contentTitle)) {
+                TitlePattern.compile(titlePattern, TitlePatternCache.forConfiguration(context.getConfiguration()))
+                        .addTo(titleModel, modelFactory, layoutTitle, contentTitle);
+            } else if (Extensions.asBoolean(contentTitle)) {
+                titleModel.addModel(contentTitle);
+            } else if (Extensions.asBoolean(layoutTitle)) {
+                titleModel.addModel(layoutTitle);
             }
-        } else if (Extensions.asBoolean(contentTitle)) {
-            titleModel.addModel(contentTitle);
-        } else if (Extensions.asBoolean(layoutTitle)) {
-            titleModel.addModel(layoutTitle);
-        }
 
-        structureHandler.setBody(titleModel, true);
+            structureHandler.setBody(titleModel, true);
+        } finally {
+            metrics.stopTiming(attributeName, context, start);
+        }
     }
 
 }
@@ -19,6 +19,7 @@ import nz.net.ultraq.thymeleaf.decorators.SortingStrategy;
 import nz.net.ultraq.thymeleaf.decorators.xml.XmlDocumentDecorator;
 import nz.net.ultraq.thymeleaf.internal.Extensions;
 import nz.net.ultraq.thymeleaf.internal.ITemplateEventPredicate;
+import nz.net.ultraq.thymeleaf.models.extensions.ModelView;
 import org.thymeleaf.context.ITemplateContext;
 import org.thymeleaf.model.IModel;
 import org.thymeleaf.model.IModelFactory;
@@ -64,13 +65,13 @@ public class HtmlDocumentDecorator extends XmlDocumentDecorator {
         ITemplateEventPredicate headModelFinder = event -> Extensions.isOpeningElementOf(event, "head");
 
         if (autoHeadMerging) {
-            IModel targetHeadModel = Extensions.findModel(resultDocumentModel, headModelFinder);
+            ModelView targetHeadModel = Extensions.findModel(resultDocumentModel, headModelFinder);
             IModel resultHeadModel = new HtmlHeadDecorator(context, sortingStrategy).decorate(targetHeadModel,
                     Extensions.findModel(sourceDocumentModel, headModelFinder)
             );
             if (Extensions.asBoolean(resultHeadModel)) {
                 if (Extensions.asBoolean(targetHeadModel)) {
-                    Extensions.replaceModel(resultDocumentModel, Extensions.findIndexOfModel(resultDocumentModel, targetHeadModel), resultHeadModel);
+                    Extensions.replaceModel(resultDocumentModel, targetHeadModel.getOffset(), resultHeadModel);
                 } else {
                     Extensions.insertModelWithWhitespace(resultDocumentModel, Extensions.findIndexOf(resultDocumentModel, event -> {
                         return Extensions.isOpeningElementOf(event, "body")
@@ -91,13 +92,13 @@ public class HtmlDocumentDecorator extends XmlDocumentDecorator {
 
         // Body decoration
         ITemplateEventPredicate bodyModelFinder = event -> Extensions.isOpeningElementOf(event, "body");
-        IModel targetBodyModel = Extensions.findModel(resultDocumentModel, bodyModelFinder);
+        ModelView targetBodyModel = Extensions.findModel(resultDocumentModel, bodyModelFinder);
         IModel resultBodyModel = new HtmlBodyDecorator(context).decorate(targetBodyModel,
                 Extensions.findModel(sourceDocumentModel, bodyModelFinder)
         );
         if (Extensions.asBoolean(resultBodyModel)) {
             if (Extensions.asBoolean(targetBodyModel)) {
-                Extensions.replaceModel(resultDocumentModel, Extensions.findIndexOfModel(resultDocumentModel, targetBodyModel), resultBodyModel);
+                Extensions.replaceModel(resultDocumentModel, targetBodyModel.getOffset(), resultBodyModel);
             } else {
                 Extensions.insertModelWithWhitespace(resultDocumentModel, Extensions.findIndexOf(resultDocumentModel, event -> {
                     return Extensions.isClosingElementOf(event, "html");
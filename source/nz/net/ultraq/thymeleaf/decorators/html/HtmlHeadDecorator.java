@@ -15,10 +15,16 @@
  */
 package nz.net.ultraq.thymeleaf.decorators.html;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics;
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics.Counter;
+import nz.net.ultraq.thymeleaf.decorators.BatchSortingStrategy;
 import nz.net.ultraq.thymeleaf.decorators.Decorator;
 import nz.net.ultraq.thymeleaf.decorators.SortingStrategy;
 import nz.net.ultraq.thymeleaf.internal.Extensions;
+import nz.net.ultraq.thymeleaf.internal.FlightRecorderEvent;
 import nz.net.ultraq.thymeleaf.internal.ITemplateEventPredicate;
 import nz.net.ultraq.thymeleaf.models.AttributeMerger;
 import org.thymeleaf.context.ITemplateContext;
@@ -96,6 +102,29 @@ public class HtmlHeadDecorator implements Decorator {
         // Merge the rest of the source <head> elements with the target <head>
         // elements using the current merging strategy
         if (Extensions.asBoolean(sourceHeadModel) && Extensions.asBoolean(targetHeadModel)) {
+            Object event = FlightRecorderEvent.MERGE_HEAD.begin();
+
+            // Strategies that can work out the whole merged <head> in one go let
+            // it be built in one go too
+            if (sortingStrategy instanceof BatchSortingStrategy && Extensions.isElement(resultHeadModel)) {
+                List<IModel> childModels = new ArrayList<>();
+                for (Iterator<IModel> it = Extensions.childModelIterator(sourceHeadModel); it.hasNext();) {
+                    IModel model = it.next();
+                    if (!isTitle.test(Extensions.first(model))) {
+                        childModels.add(model);
+                    }
+                }
+                List<IModel> mergedChildModels = ((BatchSortingStrategy) sortingStrategy).mergeModels(resultHeadModel, childModels);
+                IModel mergedHeadModel = buildHeadModel(modelFactory, resultHeadModel, mergedChildModels);
+                LayoutDialectMetrics.forConfiguration(context.getConfiguration())
+                        .count(context, Counter.HEAD_CHILDREN_MERGED, childModels.size());
+                if (event != null) {
+                    FlightRecorderEvent.MERGE_HEAD.commit(event, childModels.size(), sortingStrategy.getClass().getName());
+                }
+                return mergedHeadModel;
+            }
+
+            int childrenMerged = 0;
             for (Iterator<IModel> it = Extensions.childModelIterator(sourceHeadModel); it.hasNext();) {
                 IModel model = it.next();
                 if (isTitle.test(Extensions.first(model))) {
@@ -104,9 +133,34 @@ public class HtmlHeadDecorator implements Decorator {
                 Extensions.insertModelWithWhitespace(resultHeadModel,
                         sortingStrategy.findPositionForModel(resultHeadModel, model),
                         model, modelFactory);
+                childrenMerged++;
+            }
+            LayoutDialectMetrics.forConfiguration(context.getConfiguration())
+                    .count(context, Counter.HEAD_CHILDREN_MERGED, childrenMerged);
+            if (event != null) {
+                FlightRecorderEvent.MERGE_HEAD.commit(event, childrenMerged, sortingStrategy.getClass().getName());
             }
         }
         return resultHeadModel;
     }
 
+    /**
+     * Create a new {@code <head>} model from the opening and closing tags of
+     * the given one, and the given children.
+     *
+     * @param modelFactory
+     * @param headModel
+     * @param childModels
+     * @return The new {@code <head>} model.
+     */
+    private static IModel buildHeadModel(IModelFactory modelFactory, IModel headModel, List<IModel> childModels) {
+        IModel result = modelFactory.createModel();
+        result.add(Extensions.first(headModel));
+        for (IModel childModel : childModels) {
+            result.addModel(childModel);
+        }
+        result.add(Extensions.last(headModel));
+        return result;
+    }
+
 }
@@ -15,7 +15,8 @@
  */
 package nz.net.ultraq.thymeleaf.decorators.strategies;
 
-import nz.net.ultraq.thymeleaf.decorators.SortingStrategy;
+import java.util.List;
+import nz.net.ultraq.thymeleaf.decorators.BatchSortingStrategy;
 import nz.net.ultraq.thymeleaf.internal.Extensions;
 import org.thymeleaf.model.IModel;
 
@@ -40,7 +41,7 @@ import org.thymeleaf.model.IModel;
  * @author Emanuel Rabina
  * @since 2.4.0
  */
-public class AppendingRespectLayoutTitleStrategy implements SortingStrategy {
+public class AppendingRespectLayoutTitleStrategy implements BatchSortingStrategy {
 
     /**
      * For {@code <title>} elements, returns the position of the matching
@@ -71,4 +72,26 @@ public class AppendingRespectLayoutTitleStrategy implements SortingStrategy {
         int positions = headModel.size();
         return positions - (positions > 2 ? 2 : 1);
     }
+
+    /**
+     * Appends all of the source {@code <head>} children at once, each one going
+     * where {@link #findPositionForModel} would have put it.
+     *
+     * @param headModel Model of a {@code <head>} element.
+     * @param childModels Children of the source {@code <head>} element other
+     * than its {@code <title>}, in order.
+     * @return The children of the merged {@code <head>} element.
+     */
+    @Override
+    public List<IModel> mergeModels(IModel headModel, List<IModel> childModels) {
+        HeadChildren children = new HeadChildren(headModel);
+        for (IModel childModel : childModels) {
+            // Discard text/whitespace nodes
+            if (!Extensions.isWhitespace(childModel)) {
+                children.insertWithWhitespace(children.indexOfLastEvent(), childModel);
+            }
+        }
+        return children.toList();
+    }
+
 }
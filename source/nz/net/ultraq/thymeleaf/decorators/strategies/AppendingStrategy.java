@@ -15,7 +15,8 @@
  */
 package nz.net.ultraq.thymeleaf.decorators.strategies;
 
-import nz.net.ultraq.thymeleaf.decorators.SortingStrategy;
+import java.util.List;
+import nz.net.ultraq.thymeleaf.decorators.BatchSortingStrategy;
 import nz.net.ultraq.thymeleaf.internal.Extensions;
 import org.thymeleaf.model.IModel;
 
@@ -39,7 +40,7 @@ import org.thymeleaf.model.IModel;
  * @author Emanuel Rabina
  */
 @Deprecated
-public class AppendingStrategy implements SortingStrategy {
+public class AppendingStrategy implements BatchSortingStrategy {
 
     /**
      * Returns the position at the end of the {@code <head>} section.
@@ -69,4 +70,25 @@ public class AppendingStrategy implements SortingStrategy {
         return positions - (positions > 2 ? 2 : 1);
     }
 
+    /**
+     * Appends all of the source {@code <head>} children at once, each one going
+     * where {@link #findPositionForModel} would have put it.
+     *
+     * @param headModel Model of a {@code <head>} element.
+     * @param childModels Children of the source {@code <head>} element other
+     * than its {@code <title>}, in order.
+     * @return The children of the merged {@code <head>} element.
+     */
+    @Override
+    public List<IModel> mergeModels(IModel headModel, List<IModel> childModels) {
+        HeadChildren children = new HeadChildren(headModel);
+        for (IModel childModel : childModels) {
+            // Discard text/whitespace nodes
+            if (!Extensions.isWhitespace(childModel)) {
+                children.insertWithWhitespace(children.indexOfLastEvent(), childModel);
+            }
+        }
+        return children.toList();
+    }
+
 }
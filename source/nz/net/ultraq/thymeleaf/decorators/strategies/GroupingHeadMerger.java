@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.decorators.strategies;
+
+import java.util.Arrays;
+import java.util.List;
+import nz.net.ultraq.thymeleaf.internal.Extensions;
+import org.thymeleaf.model.IComment;
+import org.thymeleaf.model.IElementTag;
+import org.thymeleaf.model.IModel;
+import org.thymeleaf.model.IOpenElementTag;
+import org.thymeleaf.model.IProcessableElementTag;
+import org.thymeleaf.model.ITemplateEvent;
+
+/**
+ * Merges {@code <head>} children by grouping like elements together, the way
+ * the grouping strategies do, but for a whole source {@code <head>} in one
+ * pass. The children of the target {@code <head>} are classified once, and the
+ * position at the end of each group is then kept up to date as models are
+ * added, rather than searched for again for every model.
+ *
+ * @author zhanhb
+ */
+final class GroupingHeadMerger {
+
+    private static final int OTHER_TEXT = 0;
+    private static final int COMMENT = 1;
+    private static final int META = 2;
+    private static final int SCRIPT = 3;
+    private static final int STYLE = 4;
+    private static final int STYLESHEET = 5;
+    private static final int OTHER = 6;
+
+    /**
+     * Figure out the group for the given model.
+     *
+     * @param model
+     * @return Matching group to describe the model.
+     */
+    static int findMatchingType(IModel model) {
+        ITemplateEvent event = Extensions.first(model);
+
+        if (event instanceof IComment) {
+            return COMMENT;
+        }
+        if (event instanceof IElementTag) {
+            String elementCompleteName = ((IElementTag) event).getElementCompleteName();
+            if (event instanceof IProcessableElementTag && "meta".equals(elementCompleteName)) {
+                return META;
+            }
+            if (event instanceof IOpenElementTag && "script".equals(elementCompleteName)) {
+                return SCRIPT;
+            }
+            if (event instanceof IOpenElementTag && "style".equals(elementCompleteName)) {
+                return STYLE;
+            }
+            if (event instanceof IProcessableElementTag && "link".equals(elementCompleteName)
+                    && "stylesheet".equals(((IProcessableElementTag) event).getAttributeValue("rel"))) {
+                return STYLESHEET;
+            }
+            return OTHER;
+        }
+        return OTHER_TEXT;
+    }
+
+    /**
+     * Merge the child models into the head model, placing each one after the
+     * last child of the same group, or at the beginning of the head if there is
+     * none.
+     *
+     * @param headModel
+     * @param childModels
+     * @return The children of the merged head.
+     */
+    static List<IModel> merge(IModel headModel, List<IModel> childModels) {
+        HeadChildren children = new HeadChildren(headModel);
+
+        // Index of the last child in each group, -1 if the group is empty
+        int[] lastIndexes = new int[OTHER + 1];
+        Arrays.fill(lastIndexes, -1);
+        for (int i = 0, size = children.size(); i < size; i++) {
+            lastIndexes[findMatchingType(children.get(i))] = i;
+        }
+
+        for (IModel childModel : childModels) {
+
+            // Discard text/whitespace nodes
+            if (Extensions.isWhitespace(childModel)) {
+                continue;
+            }
+
+            int index = lastIndexes[findMatchingType(childModel)] + 1;
+            int inserted = children.insertWithWhitespace(index, childModel);
+
+            // Everything at or after the insertion point moves down, then the new
+            // children become the last of their groups if they come after them
+            for (int type = 0; type < lastIndexes.length; type++) {
+                if (lastIndexes[type] >= index) {
+                    lastIndexes[type] += inserted;
+                }
+            }
+            for (int i = index, end = index + inserted; i < end; i++) {
+                int type = findMatchingType(children.get(i));
+                if (lastIndexes[type] < i) {
+                    lastIndexes[type] = i;
+                }
+            }
+        }
+
+        return children.toList();
+    }
+
+    private GroupingHeadMerger() {
+        throw new AssertionError();
+    }
+
+}
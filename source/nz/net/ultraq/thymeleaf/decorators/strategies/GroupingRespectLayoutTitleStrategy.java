@@ -17,15 +17,11 @@ package nz.net.ultraq.thymeleaf.decorators.strategies;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.ListIterator;
-import nz.net.ultraq.thymeleaf.decorators.SortingStrategy;
+import nz.net.ultraq.thymeleaf.decorators.BatchSortingStrategy;
 import nz.net.ultraq.thymeleaf.internal.Extensions;
-import org.thymeleaf.model.IComment;
-import org.thymeleaf.model.IElementTag;
 import org.thymeleaf.model.IModel;
-import org.thymeleaf.model.IOpenElementTag;
-import org.thymeleaf.model.IProcessableElementTag;
-import org.thymeleaf.model.ITemplateEvent;
 
 /**
  * A special version of the {@link GroupingStrategy} sorter that respects the
@@ -48,46 +44,7 @@ import org.thymeleaf.model.ITemplateEvent;
  * @author Emanuel Rabina
  * @since 2.4.0
  */
-public class GroupingRespectLayoutTitleStrategy implements SortingStrategy {
-
-    /**
-     * Figure out the enum for the given model.
-     *
-     * @param model
-     * @return Matching enum to describe the model.
-     */
-    private static int findMatchingType(IModel model) {
-        final int COMMENT = 1;
-        final int META = 2;
-        final int SCRIPT = 3;
-        final int STYLE = 4;
-        final int STYLESHEET = 5;
-        final int OTHER = 6;
-
-        ITemplateEvent event = Extensions.first(model);
-
-        if (event instanceof IComment) {
-            return COMMENT;
-        }
-        if (event instanceof IElementTag) {
-            String elementCompleteName = ((IElementTag) event).getElementCompleteName();
-            if (event instanceof IProcessableElementTag && "meta".equals(elementCompleteName)) {
-                return META;
-            }
-            if (event instanceof IOpenElementTag && "script".equals(elementCompleteName)) {
-                return SCRIPT;
-            }
-            if (event instanceof IOpenElementTag && "style".equals(elementCompleteName)) {
-                return STYLE;
-            }
-            if (event instanceof IProcessableElementTag && "link".equals(elementCompleteName)
-                    && "stylesheet".equals(((IProcessableElementTag) event).getAttributeValue("rel"))) {
-                return STYLESHEET;
-            }
-            return OTHER;
-        }
-        return 0;
-    }
+public class GroupingRespectLayoutTitleStrategy implements BatchSortingStrategy {
 
     /**
      * For {@code <title>} elements, returns the position of the matching
@@ -116,7 +73,7 @@ public class GroupingRespectLayoutTitleStrategy implements SortingStrategy {
             }
         }
 
-        int type = findMatchingType(childModel);
+        int type = GroupingHeadMerger.findMatchingType(childModel);
         ArrayList<IModel> list = new ArrayList<>(20);
 
         for (Iterator<IModel> it = Extensions.childModelIterator(headModel); it.hasNext();) {
@@ -126,7 +83,7 @@ public class GroupingRespectLayoutTitleStrategy implements SortingStrategy {
         ListIterator<IModel> listIterator = list.listIterator(list.size());
         while (listIterator.hasPrevious()) {
             IModel headSubModel = listIterator.previous();
-            if (type == findMatchingType(headSubModel)) {
+            if (type == GroupingHeadMerger.findMatchingType(headSubModel)) {
                 if (Extensions.asBoolean(headModel)) {
                     return Extensions.findIndexOfModel(headModel, headSubModel) + headSubModel.size();
                 }
@@ -136,4 +93,18 @@ public class GroupingRespectLayoutTitleStrategy implements SortingStrategy {
         return 1;
     }
 
+    /**
+     * Merges all of the source {@code <head>} children at once, grouping them
+     * with like elements the same way {@link #findPositionForModel} does.
+     *
+     * @param headModel Model of a {@code <head>} element.
+     * @param childModels Children of the source {@code <head>} element other
+     * than its {@code <title>}, in order.
+     * @return The children of the merged {@code <head>} element.
+     */
+    @Override
+    public List<IModel> mergeModels(IModel headModel, List<IModel> childModels) {
+        return GroupingHeadMerger.merge(headModel, childModels);
+    }
+
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.decorators.strategies;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import nz.net.ultraq.thymeleaf.internal.Extensions;
+import nz.net.ultraq.thymeleaf.models.extensions.ModelView;
+import org.thymeleaf.model.IModel;
+import org.thymeleaf.model.IModelFactory;
+
+/**
+ * The children of a {@code <head>} element as a list of models, for strategies
+ * that work out the whole merged {@code <head>} at once instead of inserting
+ * into the head model one child at a time. Insertions mirror those of
+ * {@link Extensions#insertModelWithWhitespace}, but only move references
+ * around rather than events.
+ *
+ * @author zhanhb
+ */
+final class HeadChildren {
+
+    private final IModelFactory modelFactory;
+    private final ArrayList<IModel> children;
+
+    /**
+     * Constructor, gather the immediate children of the head model.
+     *
+     * @param headModel
+     */
+    HeadChildren(IModel headModel) {
+        this.modelFactory = headModel.getConfiguration().getModelFactory(headModel.getTemplateMode());
+        this.children = new ArrayList<>(headModel.size());
+        for (Iterator<IModel> it = Extensions.childModelIterator(headModel); it.hasNext();) {
+            children.add(it.next());
+        }
+    }
+
+    int size() {
+        return children.size();
+    }
+
+    IModel get(int index) {
+        return children.get(index);
+    }
+
+    /**
+     * Returns the position of the last event within the children, which is
+     * where the appending strategies insert models. If the last child is made
+     * up of several events, it is split into one child per event so that the
+     * position can be represented.
+     *
+     * @return Index of a child holding only the last event, or 0 if there are
+     * no children.
+     */
+    int indexOfLastEvent() {
+        int last = children.size() - 1;
+        if (last < 0) {
+            return 0;
+        }
+        IModel lastChild = children.get(last);
+        int size = lastChild.size();
+        if (size > 1) {
+            children.remove(last);
+            for (int i = 0; i < size; i++) {
+                children.add(new ModelView(lastChild, i, 1));
+            }
+            last += size - 1;
+        }
+        return last;
+    }
+
+    /**
+     * Inserts a model at the given position, creating or copying whitespace
+     * around it the same way {@link Extensions#insertModelWithWhitespace} does.
+     *
+     * @param index
+     * @param model
+     * @return The number of children inserted, including the whitespace.
+     */
+    int insertWithWhitespace(int index, IModel model) {
+
+        // Use existing whitespace found at or before the insertion point
+        if (index < children.size()) {
+            IModel whitespace = children.get(index);
+            if (Extensions.isWhitespace(whitespace)) {
+                children.add(index, model);
+                children.add(index, whitespace);
+                return 2;
+            }
+        }
+        if (index > 0) {
+            IModel whitespace = children.get(index - 1);
+            if (Extensions.isWhitespace(whitespace)) {
+                children.add(index, whitespace);
+                children.add(index, model);
+                return 2;
+            }
+        }
+
+        // Generate whitespace, usually inserting into a tag that is immediately
+        // closed so whitespace should be added to either side
+        IModel whitespace = modelFactory.createModel(modelFactory.createText("\n\t"));
+        children.add(index, whitespace);
+        children.add(index, model);
+        children.add(index, whitespace);
+        return 3;
+    }
+
+    /**
+     * Returns the children in their current order.
+     *
+     * @return List of the child models.
+     */
+    List<IModel> toList() {
+        return children;
+    }
+
+}
@@ -17,6 +17,7 @@ package nz.net.ultraq.thymeleaf.fragments;
 
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics;
 import nz.net.ultraq.thymeleaf.internal.Extensions;
 import nz.net.ultraq.thymeleaf.models.ElementMerger;
 import org.slf4j.Logger;
@@ -73,58 +74,63 @@ public class CollectFragmentProcessor extends AbstractAttributeTagProcessor {
     @Override
     protected void doProcess(ITemplateContext context, IProcessableElementTag tag,
             AttributeName attributeName, String attributeValue, IElementTagStructureHandler structureHandler) {
-
-        // Emit a warning if found in the <head> section
-        if (getTemplateMode() == TemplateMode.HTML) {
-            for (IProcessableElementTag element : context.getElementStack()) {
-                if ("head".equals(element.getElementCompleteName())) {
-                    if (warned.compareAndSet(false, true)) {
-                        logger.warn(
-                                "You don\'t need to put the layout:fragment/data-layout-fragment attribute into the <head> section - "
-                                + "the decoration process will automatically copy the <head> section of your content templates into your layout page."
-                        );
+        LayoutDialectMetrics metrics = LayoutDialectMetrics.forConfiguration(context.getConfiguration());
+        long start = metrics.startTiming();
+        try {
+            // Emit a warning if found in the <head> section
+            if (getTemplateMode() == TemplateMode.HTML) {
+                for (IProcessableElementTag element : context.getElementStack()) {
+                    if ("head".equals(element.getElementCompleteName())) {
+                        if (warned.compareAndSet(false, true)) {
+                            logger.warn(
+                                    "You don\'t need to put the layout:fragment/data-layout-fragment attribute into the <head> section - "
+                                    + "the decoration process will automatically copy the <head> section of your content templates into your layout page."
+                            );
+                        }
+                        break;
                     }
-                    break;
                 }
             }
-        }
 
-        // All :define fragments we collected, :collect fragments included to determine where to stop.
-        // Fragments after :collect are preserved for the next :collect event
-        List<IModel> fragments = FragmentMap.get(context).get(attributeValue);
+            // All :define fragments we collected, :collect fragments included to determine where to stop.
+            // Fragments after :collect are preserved for the next :collect event
+            List<IModel> fragments = FragmentMap.get(context).get(attributeValue);
 
-        // Replace the tag body with the fragment
-        if (fragments != null && !fragments.isEmpty()) {
-            IModelFactory modelFactory = context.getModelFactory();
-            ElementMerger merger = new ElementMerger(context);
-            IModel[] replacementModel = new IModel[]{modelFactory.createModel(tag)};
-            boolean first = true;
-            while (!fragments.isEmpty()) {
-                IModel fragment = fragments.remove(0);
-                if (!StringUtils.isEmpty(((IProcessableElementTag) fragment.get(0)).getAttributeValue(getDialectPrefix(), PROCESSOR_COLLECT))) {
-                    break;
-                }
-                if (first) {
-                    replacementModel[0] = merger.merge(replacementModel[0], fragment);
-                    first = false;
-                } else {
-                    AtomicBoolean firstEvent = new AtomicBoolean(true);
-                    Extensions.each(fragment, event -> {
-                        if (firstEvent.compareAndSet(true, false)) {
-                            replacementModel[0].add(modelFactory.createText("\n"));
-                            replacementModel[0].add(modelFactory.removeAttribute((IProcessableElementTag) event, getDialectPrefix(), PROCESSOR_DEFINE));
-                        } else {
-                            replacementModel[0].add(event);
-                        }
-                    });
+            // Replace the tag body with the fragment
+            if (fragments != null && !fragments.isEmpty()) {
+                IModelFactory modelFactory = context.getModelFactory();
+                ElementMerger merger = new ElementMerger(context);
+                IModel[] replacementModel = new IModel[]{modelFactory.createModel(tag)};
+                boolean first = true;
+                while (!fragments.isEmpty()) {
+                    IModel fragment = fragments.remove(0);
+                    if (!StringUtils.isEmpty(((IProcessableElementTag) fragment.get(0)).getAttributeValue(getDialectPrefix(), PROCESSOR_COLLECT))) {
+                        break;
+                    }
+                    if (first) {
+                        replacementModel[0] = merger.merge(replacementModel[0], fragment);
+                        first = false;
+                    } else {
+                        AtomicBoolean firstEvent = new AtomicBoolean(true);
+                        Extensions.each(fragment, event -> {
+                            if (firstEvent.compareAndSet(true, false)) {
+                                replacementModel[0].add(modelFactory.createText("\n"));
+                                replacementModel[0].add(modelFactory.removeAttribute((IProcessableElementTag) event, getDialectPrefix(), PROCESSOR_DEFINE));
+                            } else {
+                                replacementModel[0].add(event);
+                            }
+                        });
+                    }
                 }
-            }
 
-            // Remove the layout:collect attribute - Thymeleaf won't do it for us
-            // when using StructureHandler.replaceWith(...)
-            replacementModel[0].replace(0, modelFactory.removeAttribute((IProcessableElementTag) Extensions.first(replacementModel[0]), getDialectPrefix(), PROCESSOR_COLLECT));
+                // Remove the layout:collect attribute - Thymeleaf won't do it for us
+                // when using StructureHandler.replaceWith(...)
+                replacementModel[0].replace(0, modelFactory.removeAttribute((IProcessableElementTag) Extensions.first(replacementModel[0]), getDialectPrefix(), PROCESSOR_COLLECT));
 
-            structureHandler.replaceWith(replacementModel[0], true);
+                structureHandler.replaceWith(replacementModel[0], true);
+            }
+        } finally {
+            metrics.stopTiming(attributeName, context, start);
         }
     }
 
@@ -19,7 +19,13 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import javax.annotation.Nullable;
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics;
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics.Counter;
 import nz.net.ultraq.thymeleaf.internal.Extensions;
+import nz.net.ultraq.thymeleaf.models.extensions.ModelView;
+import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.engine.TemplateModel;
 import org.thymeleaf.model.IModel;
 import org.thymeleaf.model.IOpenElementTag;
 import org.thymeleaf.model.IProcessableElementTag;
@@ -36,6 +42,8 @@ import org.thymeleaf.util.StringUtils;
 public class FragmentFinder {
 
     private final String dialectPrefix;
+    @Nullable
+    private final ITemplateContext context;
 
     /**
      * Constructor, create a new fragment finder to search for fragments using
@@ -44,7 +52,20 @@ public class FragmentFinder {
      * @param dialectPrefix
      */
     public FragmentFinder(String dialectPrefix) {
+        this(dialectPrefix, null);
+    }
+
+    /**
+     * Constructor, create a new fragment finder to search for fragments using
+     * the given prefix as the one configured for the layout dialect, counting
+     * the work it does against the template of the given context.
+     *
+     * @param dialectPrefix
+     * @param context
+     */
+    public FragmentFinder(String dialectPrefix, @Nullable ITemplateContext context) {
         this.dialectPrefix = dialectPrefix;
+        this.context = context;
     }
 
     /**
@@ -52,11 +73,24 @@ public class FragmentFinder {
      * the given model, without delving into {@code layout:include} or
      * {@code layout:replace} elements, mapped by the name of each fragment.
      *
+     * <p>
+     * Fragments found in a model that can't be modified, like a
+     * {@link TemplateModel} or a {@link ModelView}, aren't copied out of it,
+     * but are instead read-only {@link ModelView}s over it, which are only
+     * turned into models of their own if and when they replace a fragment in a
+     * layout. Fragments found in any other model, which is usually modified by
+     * the processor doing the searching, are each copied on their own.
+     *
      * @param model Model whose events are to be searched.
      * @return Map of fragment names and their elements.
      */
     public Map<String, List<IModel>> findFragments(IModel model) {
         Map<String, List<IModel>> fragmentsMap = new LinkedHashMap<>();
+        boolean readOnly = model instanceof TemplateModel || model instanceof ModelView;
+        IModel viewed = model instanceof ModelView ? ((ModelView) model).getParent() : model;
+        int viewOffset = model instanceof ModelView ? ((ModelView) model).getOffset() : 0;
+        int fragmentCount = 0;
+        int eventsCloned = 0;
 
         for (int eventIndex = 0, size = model.size(); eventIndex < size;) {
             ITemplateEvent event = model.get(eventIndex);
@@ -72,13 +106,18 @@ public class FragmentFinder {
                     }
                 }
                 if (!StringUtils.isEmpty(fragmentName)) {
-                    IModel fragment = Extensions.getModel(model, eventIndex);
+                    IModel fragment = new ModelView(viewed, viewOffset + eventIndex, Extensions.sizeOfModelAt(model, eventIndex));
+                    if (!readOnly) {
+                        fragment = fragment.cloneModel();
+                        eventsCloned += fragment.size();
+                    }
                     List<IModel> list = fragmentsMap.get(fragmentName);
                     if (list == null) {
                         list = new LinkedList<>();
                         fragmentsMap.put(fragmentName, list);
                     }
                     list.add(fragment);
+                    fragmentCount++;
                     if (!collect) {
                         eventIndex += fragment.size();
                         continue;
@@ -88,6 +127,14 @@ public class FragmentFinder {
             eventIndex++;
         }
 
+        if (context != null) {
+            LayoutDialectMetrics metrics = LayoutDialectMetrics.forConfiguration(context.getConfiguration());
+            metrics.count(context, Counter.FRAGMENTS_FOUND, fragmentsMap.size());
+            metrics.count(context, Counter.MODELS_CREATED, fragmentCount);
+            if (eventsCloned > 0) {
+                metrics.count(context, Counter.EVENTS_CLONED, eventsCloned);
+            }
+        }
         return fragmentsMap;
     }
 
@@ -15,11 +15,16 @@
  */
 package nz.net.ultraq.thymeleaf.fragments;
 
+import java.util.AbstractMap;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.thymeleaf.context.IContext;
 import org.thymeleaf.model.IModel;
 import org.thymeleaf.processor.element.IElementModelStructureHandler;
@@ -27,12 +32,17 @@ import org.thymeleaf.processor.element.IElementModelStructureHandler;
 /**
  * Holds the layout fragments encountered across layout/decorator and content
  * templates for use later.
+ * <p>
+ * Each node that sets fragments gets a map of its own, linked to the map of
+ * the enclosing scope, so that setting fragments only costs as much as the
+ * fragments being added. Fragments of the same name from this and enclosing
+ * scopes are combined the first time the name is looked up, and that list is
+ * kept for this scope as the {@code layout:collect} processor consumes it.
  *
  * @author zhanhb
  * @author Emanuel Rabina
  */
-@SuppressWarnings({"serial", "CloneableImplementsClone"})
-public class FragmentMap extends HashMap<String, List<IModel>> {
+public class FragmentMap extends AbstractMap<String, List<IModel>> {
 
     private static final String FRAGMENT_COLLECTION_KEY = "LayoutDialect::FragmentCollection";
 
@@ -60,18 +70,74 @@ public class FragmentMap extends HashMap<String, List<IModel>> {
     public static void setForNode(IContext context, IElementModelStructureHandler structureHandler,
             @Nonnull Map<String, List<IModel>> fragments) {
         Map<String, List<IModel>> accumulator = get(context);
-        LinkedHashMap<String, List<IModel>> clone = new LinkedHashMap<>(fragments);
-        for (Entry<String, List<IModel>> entry : accumulator.entrySet()) {
-            String fragmentName = entry.getKey();
-            List<IModel> fragmentList = entry.getValue();
-            List<IModel> list = clone.get(fragmentName);
-            if (list != null) {
-                list.addAll(fragmentList);
-            } else {
-                clone.put(fragmentName, fragmentList);
+        FragmentMap parent = accumulator instanceof FragmentMap ? (FragmentMap) accumulator
+                : new FragmentMap(null, accumulator);
+        structureHandler.setLocalVariable(FRAGMENT_COLLECTION_KEY, new FragmentMap(parent, fragments));
+    }
+
+    private final FragmentMap parent;
+    private final Map<String, List<IModel>> fragments;
+    private final Map<String, List<IModel>> resolved = new HashMap<>();
+
+    /**
+     * Constructor, create an empty fragment map.
+     */
+    public FragmentMap() {
+        this(null, Collections.<String, List<IModel>>emptyMap());
+    }
+
+    private FragmentMap(@Nullable FragmentMap parent, Map<String, List<IModel>> fragments) {
+        this.parent = parent;
+        this.fragments = new LinkedHashMap<>(fragments);
+    }
+
+    /**
+     * Returns the fragments of the given name from this and all enclosing
+     * scopes, those of this scope first.
+     *
+     * @param key
+     * @return List of fragments, or {@code null} if there are none of that
+     * name.
+     */
+    @Override
+    public List<IModel> get(Object key) {
+        if (resolved.containsKey(key)) {
+            return resolved.get(key);
+        }
+        if (!(key instanceof String)) {
+            return null;
+        }
+        List<IModel> inherited = parent != null ? parent.get(key) : null;
+        List<IModel> own = fragments.get(key);
+        List<IModel> result;
+        if (own == null) {
+            result = inherited;
+        } else {
+            result = new LinkedList<>(own);
+            if (inherited != null) {
+                result.addAll(inherited);
+            }
+        }
+        resolved.put((String) key, result);
+        return result;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Set<Entry<String, List<IModel>>> entrySet() {
+        Map<String, List<IModel>> result = new LinkedHashMap<>();
+        for (FragmentMap map = this; map != null; map = map.parent) {
+            for (String fragmentName : map.fragments.keySet()) {
+                if (!result.containsKey(fragmentName)) {
+                    result.put(fragmentName, get(fragmentName));
+                }
             }
         }
-        structureHandler.setLocalVariable(FRAGMENT_COLLECTION_KEY, clone);
+        return Collections.unmodifiableMap(result).entrySet();
     }
 
 }
@@ -17,6 +17,7 @@ package nz.net.ultraq.thymeleaf.fragments;
 
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics;
 import nz.net.ultraq.thymeleaf.internal.Extensions;
 import nz.net.ultraq.thymeleaf.models.ElementMerger;
 import org.slf4j.Logger;
@@ -69,33 +70,39 @@ public class FragmentProcessor extends AbstractAttributeTagProcessor {
     @Override
     protected void doProcess(ITemplateContext context, IProcessableElementTag tag,
             AttributeName attributeName, String attributeValue, IElementTagStructureHandler structureHandler) {
-        // Emit a warning if found in the <head> section
-        if (getTemplateMode() == TemplateMode.HTML) {
-            for (IProcessableElementTag element : context.getElementStack()) {
-                if ("head".equals(element.getElementCompleteName())) {
-                    if (warned.compareAndSet(false, true)) {
-                        logger.warn("You don't need to put the layout:fragment/data-layout-fragment attribute into the <head> section - "
-                                + "the decoration process will automatically copy the <head> section of your content templates into your layout page.");
+        LayoutDialectMetrics metrics = LayoutDialectMetrics.forConfiguration(context.getConfiguration());
+        long start = metrics.startTiming();
+        try {
+            // Emit a warning if found in the <head> section
+            if (getTemplateMode() == TemplateMode.HTML) {
+                for (IProcessableElementTag element : context.getElementStack()) {
+                    if ("head".equals(element.getElementCompleteName())) {
+                        if (warned.compareAndSet(false, true)) {
+                            logger.warn("You don't need to put the layout:fragment/data-layout-fragment attribute into the <head> section - "
+                                    + "the decoration process will automatically copy the <head> section of your content templates into your layout page.");
+                        }
+                        break;
                     }
-                    break;
                 }
             }
-        }
 
-        // Locate the fragment that corresponds to this decorator/include fragment
-        List<IModel> fragments = FragmentMap.get(context).get(attributeValue);
-        // Replace the tag body with the fragment
-        if (fragments != null && !fragments.isEmpty()) {
-            IModel fragment = fragments.get(0);
-            IModelFactory modelFactory = context.getModelFactory();
-            IModel replacementModel = new ElementMerger(context).merge(modelFactory.createModel(tag), fragment);
+            // Locate the fragment that corresponds to this decorator/include fragment
+            List<IModel> fragments = FragmentMap.get(context).get(attributeValue);
+            // Replace the tag body with the fragment
+            if (fragments != null && !fragments.isEmpty()) {
+                IModel fragment = fragments.get(0);
+                IModelFactory modelFactory = context.getModelFactory();
+                IModel replacementModel = new ElementMerger(context).merge(modelFactory.createModel(tag), fragment);
 
-            // Remove the layout:fragment attribute - Thymeleaf won't do it for us
-            // when using StructureHandler.replaceWith(...)
-            replacementModel.replace(0, modelFactory.removeAttribute((IProcessableElementTag) Extensions.first(replacementModel),
-                    getDialectPrefix(), PROCESSOR_NAME));
+                // Remove the layout:fragment attribute - Thymeleaf won't do it for us
+                // when using StructureHandler.replaceWith(...)
+                replacementModel.replace(0, modelFactory.removeAttribute((IProcessableElementTag) Extensions.first(replacementModel),
+                        getDialectPrefix(), PROCESSOR_NAME));
 
-            structureHandler.replaceWith(replacementModel, true);
+                structureHandler.replaceWith(replacementModel, true);
+            }
+        } finally {
+            metrics.stopTiming(attributeName, context, start);
         }
     }
 
@@ -19,18 +19,19 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics;
 import nz.net.ultraq.thymeleaf.expressions.ExpressionProcessor;
 import nz.net.ultraq.thymeleaf.fragments.FragmentFinder;
 import nz.net.ultraq.thymeleaf.fragments.FragmentMap;
 import nz.net.ultraq.thymeleaf.fragments.FragmentParameterNamesExtractor;
 import nz.net.ultraq.thymeleaf.fragments.FragmentProcessor;
 import nz.net.ultraq.thymeleaf.internal.Extensions;
+import nz.net.ultraq.thymeleaf.models.TemplateFragment;
 import nz.net.ultraq.thymeleaf.models.TemplateModelFinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.thymeleaf.context.ITemplateContext;
 import org.thymeleaf.engine.AttributeName;
-import org.thymeleaf.engine.TemplateModel;
 import org.thymeleaf.model.IModel;
 import org.thymeleaf.model.IProcessableElementTag;
 import org.thymeleaf.processor.element.AbstractAttributeModelProcessor;
@@ -82,59 +83,65 @@ public class IncludeProcessor extends AbstractAttributeModelProcessor {
     @Override
     protected void doProcess(ITemplateContext context, IModel model, AttributeName attributeName,
             String attributeValue, IElementModelStructureHandler structureHandler) {
-        if (warned.compareAndSet(false, true)) {
-            logger.warn(
-                    "The layout:include/data-layout-include processor is deprecated and will be removed in the next major version of the layout dialect.  "
-                    + "Use the layout:insert/data-layout-insert processor instead.  "
-                    + "See https://github.com/ultraq/thymeleaf-layout-dialect/issues/107 for more information."
-            );
-        }
-        // Locate the page and fragment for inclusion
-        FragmentExpression fragmentExpression = new ExpressionProcessor(context).parseFragmentExpression(attributeValue);
-        TemplateModel fragmentForInclusion = new TemplateModelFinder(context).findFragment(fragmentExpression);
+        LayoutDialectMetrics metrics = LayoutDialectMetrics.forConfiguration(context.getConfiguration());
+        long start = metrics.startTiming();
+        try {
+            if (warned.compareAndSet(false, true)) {
+                logger.warn(
+                        "The layout:include/data-layout-include processor is deprecated and will be removed in the next major version of the layout dialect.  "
+                        + "Use the layout:insert/data-layout-insert processor instead.  "
+                        + "See https://github.com/ultraq/thymeleaf-layout-dialect/issues/107 for more information."
+                );
+            }
+            // Locate the page and fragment for inclusion
+            FragmentExpression fragmentExpression = new ExpressionProcessor(context).parseFragmentExpression(attributeValue);
+            TemplateFragment fragmentForInclusion = new TemplateModelFinder(context).findTemplateFragment(fragmentExpression);
 
-        // Gather all fragment parts within the include element, scoping them to this element
-        Map<String, List<IModel>> includeFragments = new FragmentFinder(getDialectPrefix()).findFragments(model);
-        FragmentMap.setForNode(context, structureHandler, includeFragments);
+            // Gather all fragment parts within the include element, scoping them to this element
+            Map<String, List<IModel>> includeFragments = new FragmentFinder(getDialectPrefix(), context).findFragments(model);
+            FragmentMap.setForNode(context, structureHandler, includeFragments);
 
-        // Keep track of what template is being processed?  Thymeleaf does this for
-        // its include processor, so I'm just doing the same here.
-        structureHandler.setTemplateData(fragmentForInclusion.getTemplateData());
+            // Keep track of what template is being processed?  Thymeleaf does this for
+            // its include processor, so I'm just doing the same here.
+            structureHandler.setTemplateData(fragmentForInclusion.getTemplateData());
 
-        // Replace the children of this element with the children of the included page fragment
-        IModel fragmentForInclusionUse = fragmentForInclusion.cloneModel();
-        Extensions.removeChildren(model);
+            // Replace the children of this element with the children of the included page fragment
+            IModel fragmentForInclusionUse = fragmentForInclusion.getModel();
+            Extensions.removeChildren(model);
 
-        // Retrieving a model for a template can come with whitspace, so trim those
-        // from the model so that we can use the child event iterator.
-        Extensions.trim(fragmentForInclusionUse);
+            // Retrieving a model for a template can come with whitspace, so trim those
+            // from the model so that we can use the child event iterator.
+            Extensions.trim(fragmentForInclusionUse);
 
-        for (Iterator<IModel> it = Extensions.childModelIterator(fragmentForInclusionUse); it.hasNext();) {
-            IModel fragmentChildModel = it.next();
-            model.insertModel(model.size() - 1, fragmentChildModel);
-        }
+            for (Iterator<IModel> it = Extensions.childModelIterator(fragmentForInclusionUse); it.hasNext();) {
+                IModel fragmentChildModel = it.next();
+                model.insertModel(model.size() - 1, Extensions.materialize(fragmentChildModel));
+            }
 
-        // When fragment parameters aren't named, derive the name from the fragment definition
-        // TODO: Common code across all the inclusion processors
-        if (fragmentExpression.hasSyntheticParameters()) {
-            String fragmentDefinition = ((IProcessableElementTag) Extensions.first(fragmentForInclusionUse)).getAttributeValue(getDialectPrefix(), FragmentProcessor.PROCESSOR_NAME);
-            List<String> parameterNames = new FragmentParameterNamesExtractor().extract(fragmentDefinition);
+            // When fragment parameters aren't named, derive the name from the fragment definition
+            // TODO: Common code across all the inclusion processors
+            if (fragmentExpression.hasSyntheticParameters()) {
+                String fragmentDefinition = ((IProcessableElementTag) Extensions.first(fragmentForInclusionUse)).getAttributeValue(getDialectPrefix(), FragmentProcessor.PROCESSOR_NAME);
+                List<String> parameterNames = new FragmentParameterNamesExtractor().extract(fragmentDefinition);
 
-            AssignationSequence parameters = fragmentExpression.getParameters();
-            if (parameters != null) {
-                int index = 0;
-                for (Assignation parameter : parameters) {
-                    structureHandler.setLocalVariable(parameterNames.get(index), parameter.getRight().execute(context));
-                    ++index;
+                AssignationSequence parameters = fragmentExpression.getParameters();
+                if (parameters != null) {
+                    int index = 0;
+                    for (Assignation parameter : parameters) {
+                        structureHandler.setLocalVariable(parameterNames.get(index), parameter.getRight().execute(context));
+                        ++index;
+                    }
                 }
-            }
-        } else { // Otherwise, apply values as is
-            AssignationSequence parameters = fragmentExpression.getParameters();
-            if (parameters != null) {
-                for (Assignation parameter : parameters) {
-                    structureHandler.setLocalVariable((String) parameter.getLeft().execute(context), parameter.getRight().execute(context));
+            } else { // Otherwise, apply values as is
+                AssignationSequence parameters = fragmentExpression.getParameters();
+                if (parameters != null) {
+                    for (Assignation parameter : parameters) {
+                        structureHandler.setLocalVariable((String) parameter.getLeft().execute(context), parameter.getRight().execute(context));
+                    }
                 }
             }
+        } finally {
+            metrics.stopTiming(attributeName, context, start);
         }
     }
 
@@ -17,15 +17,16 @@ package nz.net.ultraq.thymeleaf.includes;
 
 import java.util.List;
 import java.util.Map;
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics;
 import nz.net.ultraq.thymeleaf.expressions.ExpressionProcessor;
 import nz.net.ultraq.thymeleaf.fragments.FragmentFinder;
 import nz.net.ultraq.thymeleaf.fragments.FragmentMap;
 import nz.net.ultraq.thymeleaf.fragments.FragmentParameterVariableUpdater;
 import nz.net.ultraq.thymeleaf.internal.Extensions;
+import nz.net.ultraq.thymeleaf.models.TemplateFragment;
 import nz.net.ultraq.thymeleaf.models.TemplateModelFinder;
 import org.thymeleaf.context.ITemplateContext;
 import org.thymeleaf.engine.AttributeName;
-import org.thymeleaf.engine.TemplateModel;
 import org.thymeleaf.model.IModel;
 import org.thymeleaf.processor.element.AbstractAttributeModelProcessor;
 import org.thymeleaf.processor.element.IElementModelStructureHandler;
@@ -68,26 +69,31 @@ public class ReplaceProcessor extends AbstractAttributeModelProcessor {
     @Override
     protected void doProcess(ITemplateContext context, IModel model, AttributeName attributeName,
             String attributeValue, IElementModelStructureHandler structureHandler) {
+        LayoutDialectMetrics metrics = LayoutDialectMetrics.forConfiguration(context.getConfiguration());
+        long start = metrics.startTiming();
+        try {
+            // Locate the page and fragment to use for replacement
+            FragmentExpression fragmentExpression = new ExpressionProcessor(context).parseFragmentExpression(attributeValue);
+            TemplateFragment fragmentForReplacement = new TemplateModelFinder(context).findTemplateFragment(fragmentExpression);
 
-        // Locate the page and fragment to use for replacement
-        FragmentExpression fragmentExpression = new ExpressionProcessor(context).parseFragmentExpression(attributeValue);
-        TemplateModel fragmentForReplacement = new TemplateModelFinder(context).findFragment(fragmentExpression);
+            // Gather all fragment parts within the include element, scoping them to this element
+            Map<String, List<IModel>> includeFragments = new FragmentFinder(getDialectPrefix(), context).findFragments(model);
+            FragmentMap.setForNode(context, structureHandler, includeFragments);
 
-        // Gather all fragment parts within the include element, scoping them to this element
-        Map<String, List<IModel>> includeFragments = new FragmentFinder(getDialectPrefix()).findFragments(model);
-        FragmentMap.setForNode(context, structureHandler, includeFragments);
+            // Keep track of what template is being processed?  Thymeleaf does this for
+            // its include processor, so I'm just doing the same here.
+            structureHandler.setTemplateData(fragmentForReplacement.getTemplateData());
 
-        // Keep track of what template is being processed?  Thymeleaf does this for
-        // its include processor, so I'm just doing the same here.
-        structureHandler.setTemplateData(fragmentForReplacement.getTemplateData());
+            // Replace this element with the located fragment
+            IModel fragmentForReplacementUse = fragmentForReplacement.getModel();
+            Extensions.replaceModel(model, 0, fragmentForReplacementUse);
 
-        // Replace this element with the located fragment
-        IModel fragmentForReplacementUse = fragmentForReplacement.cloneModel();
-        Extensions.replaceModel(model, 0, fragmentForReplacementUse);
-
-		// Scope variables in fragment definition to current fragment
-		new FragmentParameterVariableUpdater(getDialectPrefix(), context)
-			.updateLocalVariables(fragmentExpression, fragmentForReplacementUse, structureHandler);
+    		// Scope variables in fragment definition to current fragment
+    		new FragmentParameterVariableUpdater(getDialectPrefix(), context)
+    			.updateLocalVariables(fragmentExpression, fragmentForReplacementUse, structureHandler);
+        } finally {
+            metrics.stopTiming(attributeName, context, start);
+        }
     }
 
 }
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.thymeleaf.IEngineConfiguration;
+
+/**
+ * The layout structure of a set of templates, worked out ahead of time: the
+ * layout each template decorates, the templates it inserts or replaces
+ * fragments from, and the fragments it defines. Only template names written
+ * as literals in fragment expressions can be known ahead of time, so anything
+ * worked out from variables is missing from the index.
+ * <p>
+ * An index is made at build time by {@link LayoutIndexScanner}, usually
+ * through the layout dialect's Maven plugin, and the layout dialect loads it
+ * from {@link #DEFAULT_RESOURCE} when added to a template engine. The index
+ * starts off the graph of template dependencies, and tells fragment lookups
+ * which templates don't define a fragment so those templates aren't indexed
+ * for it. Templates are still found and parsed when first used.
+ *
+ * @author zhanhb
+ */
+public class LayoutIndex {
+
+    public static final String EXECUTION_ATTRIBUTE_NAME = "LayoutDialect::LayoutIndex";
+    public static final String DEFAULT_RESOURCE = "META-INF/thymeleaf-layout-dialect/layout-index.txt";
+
+    private static final String HEADER = "# Thymeleaf Layout Dialect layout index, version 1";
+    private static final String TEMPLATE = "template";
+    private static final String DECORATE = "decorate";
+    private static final String REFERENCE = "reference";
+    private static final String FRAGMENT = "fragment";
+
+    /**
+     * Returns the index registered by the layout dialect with the given
+     * configuration.
+     *
+     * @param configuration
+     * @return The index for the configuration, or {@code null} if the layout
+     * dialect didn't find one.
+     */
+    @Nullable
+    public static LayoutIndex forConfiguration(@Nullable IEngineConfiguration configuration) {
+        if (configuration == null) {
+            return null;
+        }
+        Map<String, Object> executionAttributes = configuration.getExecutionAttributes();
+        Object index = executionAttributes != null ? executionAttributes.get(EXECUTION_ATTRIBUTE_NAME) : null;
+        return index instanceof LayoutIndex ? (LayoutIndex) index : null;
+    }
+
+    /**
+     * Load an index from a class path resource.
+     *
+     * @param classLoader
+     * @param resource
+     * @return The index, or {@code null} if there is no such resource.
+     * @throws IOException
+     */
+    @Nullable
+    public static LayoutIndex load(ClassLoader classLoader, String resource) throws IOException {
+        InputStream in = classLoader.getResourceAsStream(resource);
+        if (in == null) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Read an index in the format written by {@link #write(Writer)}.
+     *
+     * @param reader
+     * @return The index.
+     * @throws IOException If the index couldn't be read or isn't in the
+     * expected format.
+     */
+    public static LayoutIndex read(Reader reader) throws IOException {
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        List<Entry> entries = new ArrayList<>();
+        String templateName = null;
+        String decorateTemplate = null;
+        Set<String> referencedTemplates = new LinkedHashSet<>();
+        Set<String> fragmentNames = new LinkedHashSet<>();
+        int lineNumber = 0;
+        for (String line; (line = in.readLine()) != null;) {
+            lineNumber++;
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int tab = line.indexOf('\t');
+            String key = tab > 0 ? line.substring(0, tab) : null;
+            String value = tab > 0 ? line.substring(tab + 1) : null;
+            if (TEMPLATE.equals(key)) {
+                if (templateName != null) {
+                    entries.add(new Entry(templateName, decorateTemplate, referencedTemplates, fragmentNames));
+                }
+                templateName = value;
+                decorateTemplate = null;
+                referencedTemplates = new LinkedHashSet<>();
+                fragmentNames = new LinkedHashSet<>();
+            } else if (templateName != null && DECORATE.equals(key)) {
+                decorateTemplate = value;
+            } else if (templateName != null && REFERENCE.equals(key)) {
+                referencedTemplates.add(value);
+            } else if (templateName != null && FRAGMENT.equals(key)) {
+                fragmentNames.add(value);
+            } else {
+                throw new IOException("Unrecognized line " + lineNumber + " in layout index: " + line);
+            }
+        }
+        if (templateName != null) {
+            entries.add(new Entry(templateName, decorateTemplate, referencedTemplates, fragmentNames));
+        }
+        return new LayoutIndex(entries);
+    }
+
+    private static void writeLine(Writer writer, String key, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '\t' || ch == '\n' || ch == '\r') {
+                throw new IllegalArgumentException("Layout index values can't contain tabs or line breaks: " + value);
+            }
+        }
+        writer.append(key).append('\t').append(value).append('\n');
+    }
+
+    private final Map<String, Entry> entries;
+
+    /**
+     * Constructor, create an index of the given templates.
+     *
+     * @param entries
+     */
+    public LayoutIndex(Collection<Entry> entries) {
+        Map<String, Entry> map = new LinkedHashMap<>(entries.size() * 4 / 3 + 1);
+        for (Entry entry : entries) {
+            map.put(entry.getTemplateName(), entry);
+        }
+        this.entries = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Write this index out in a line-based text format.
+     *
+     * @param writer
+     * @throws IOException
+     */
+    public void write(Writer writer) throws IOException {
+        writer.append(HEADER).append('\n');
+        for (Entry entry : entries.values()) {
+            writeLine(writer, TEMPLATE, entry.getTemplateName());
+            if (entry.getDecorateTemplate() != null) {
+                writeLine(writer, DECORATE, entry.getDecorateTemplate());
+            }
+            for (String referencedTemplate : entry.getReferencedTemplates()) {
+                writeLine(writer, REFERENCE, referencedTemplate);
+            }
+            for (String fragmentName : entry.getFragmentNames()) {
+                writeLine(writer, FRAGMENT, fragmentName);
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * @return Names of all the templates in the index, in the order they were
+     * added.
+     */
+    public Set<String> getTemplateNames() {
+        return entries.keySet();
+    }
+
+    /**
+     * @param templateName
+     * @return What's known about the template, or {@code null} if it isn't in
+     * the index.
+     */
+    @Nullable
+    public Entry getEntry(String templateName) {
+        return entries.get(templateName);
+    }
+
+    /**
+     * Returns the layouts a template is decorated with, starting with the one
+     * it names itself, then the one that layout names, and so on.
+     *
+     * @param templateName
+     * @return The chain of layouts, empty if the template doesn't decorate
+     * a layout or the layout isn't a literal.
+     */
+    public List<String> getDecorationChain(String templateName) {
+        List<String> chain = new ArrayList<>();
+        Set<String> seen = new LinkedHashSet<>();
+        seen.add(templateName);
+        Entry entry = entries.get(templateName);
+        while (entry != null && entry.getDecorateTemplate() != null && seen.add(entry.getDecorateTemplate())) {
+            chain.add(entry.getDecorateTemplate());
+            entry = entries.get(entry.getDecorateTemplate());
+        }
+        return chain;
+    }
+
+    /**
+     * Returns every template a template needs to be rendered: its layouts,
+     * the templates it takes fragments from, and theirs in turn.
+     *
+     * @param templateName
+     * @return Names of the templates the given one depends on, not including
+     * itself.
+     */
+    public Set<String> getDependencies(String templateName) {
+        Set<String> dependencies = new LinkedHashSet<>();
+        List<String> pending = new ArrayList<>();
+        pending.add(templateName);
+        while (!pending.isEmpty()) {
+            Entry entry = entries.get(pending.remove(pending.size() - 1));
+            if (entry == null) {
+                continue;
+            }
+            if (entry.getDecorateTemplate() != null && dependencies.add(entry.getDecorateTemplate())) {
+                pending.add(entry.getDecorateTemplate());
+            }
+            for (String referencedTemplate : entry.getReferencedTemplates()) {
+                if (dependencies.add(referencedTemplate)) {
+                    pending.add(referencedTemplate);
+                }
+            }
+        }
+        dependencies.remove(templateName);
+        return dependencies;
+    }
+
+    /**
+     * What's known about a single template.
+     */
+    public static final class Entry {
+
+        private final String templateName;
+        @Nullable
+        private final String decorateTemplate;
+        private final Set<String> referencedTemplates;
+        private final Set<String> fragmentNames;
+
+        /**
+         * Constructor, set what's known about a template.
+         *
+         * @param templateName
+         * @param decorateTemplate Layout decorated by the template.
+         * @param referencedTemplates Templates the template inserts or replaces
+         * fragments from.
+         * @param fragmentNames Names of the fragments the template defines.
+         */
+        public Entry(String templateName, @Nullable String decorateTemplate,
+                Collection<String> referencedTemplates, Collection<String> fragmentNames) {
+            this.templateName = templateName;
+            this.decorateTemplate = decorateTemplate;
+            this.referencedTemplates = Collections.unmodifiableSet(new LinkedHashSet<>(referencedTemplates));
+            this.fragmentNames = Collections.unmodifiableSet(new LinkedHashSet<>(fragmentNames));
+        }
+
+        public String getTemplateName() {
+            return templateName;
+        }
+
+        @Nullable
+        public String getDecorateTemplate() {
+            return decorateTemplate;
+        }
+
+        public Set<String> getReferencedTemplates() {
+            return referencedTemplates;
+        }
+
+        public Set<String> getFragmentNames() {
+            return fragmentNames;
+        }
+
+    }
+
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+import nz.net.ultraq.thymeleaf.LayoutDialect;
+import nz.net.ultraq.thymeleaf.decorators.DecorateProcessor;
+import nz.net.ultraq.thymeleaf.fragments.FragmentProcessor;
+import nz.net.ultraq.thymeleaf.includes.InsertProcessor;
+import nz.net.ultraq.thymeleaf.includes.ReplaceProcessor;
+import org.attoparser.ParseException;
+import org.attoparser.config.ParseConfiguration;
+import org.attoparser.simple.AbstractSimpleMarkupHandler;
+import org.attoparser.simple.SimpleMarkupParser;
+import org.thymeleaf.model.IModel;
+import org.thymeleaf.model.IProcessableElementTag;
+import org.thymeleaf.model.ITemplateEvent;
+
+/**
+ * Builds a {@link LayoutIndex} by reading template files, without needing a
+ * template engine. Only the layout dialect attributes are looked at, and only
+ * template names that are literals in their fragment expressions, eg:
+ * {@code layout:decorate="~{layouts/main}"}, are recorded.
+ *
+ * @author zhanhb
+ */
+public class LayoutIndexScanner {
+
+    // What a template name looks like when it's not worked out from an expression
+    private static final Pattern LITERAL_TEMPLATE_NAME = Pattern.compile("[\\w\\-./]+");
+
+    /**
+     * Returns the name of the template a fragment expression points to, if
+     * that name is a literal.
+     *
+     * @param expression Fragment expression, in either the Thymeleaf 3 or the
+     * older Thymeleaf 2 syntax.
+     * @param currentTemplate Template the expression appears in, for
+     * expressions that refer to their own template.
+     * @return The template name, or {@code null} if it can't be known without
+     * evaluating the expression.
+     */
+    @Nullable
+    static String literalTemplateName(String expression, String currentTemplate) {
+        String value = expression.trim();
+        if (value.startsWith("~{") && value.endsWith("}")) {
+            value = value.substring(2, value.length() - 1);
+        } else if (value.contains("{")) {
+            return null;
+        }
+        int end = value.length();
+        int selector = value.indexOf("::");
+        if (selector >= 0) {
+            end = selector;
+        }
+        int parameters = value.indexOf('(');
+        if (parameters >= 0 && parameters < end) {
+            end = parameters;
+        }
+        String templateName = value.substring(0, end).trim();
+        if ((templateName.isEmpty() && selector >= 0) || "this".equals(templateName)) {
+            return currentTemplate;
+        }
+        return LITERAL_TEMPLATE_NAME.matcher(templateName).matches() ? templateName : null;
+    }
+
+    private final String dialectPrefix;
+    private final String suffix;
+    private final ParseConfiguration parseConfiguration;
+
+    /**
+     * Constructor, create a scanner for HTML templates using the layout
+     * dialect's default prefix.
+     */
+    public LayoutIndexScanner() {
+        this(LayoutDialect.DIALECT_PREFIX, ".html");
+    }
+
+    /**
+     * Constructor, create a scanner for HTML templates.
+     *
+     * @param dialectPrefix Prefix the layout dialect is configured with.
+     * @param suffix File name suffix of the templates, removed from file names
+     * to get template names, as is done by the template resolver.
+     */
+    public LayoutIndexScanner(String dialectPrefix, String suffix) {
+        this.dialectPrefix = dialectPrefix.toLowerCase(Locale.ROOT);
+        this.suffix = suffix;
+        this.parseConfiguration = ParseConfiguration.htmlConfiguration();
+    }
+
+    private boolean isAttribute(String attributeName, String processorName) {
+        return attributeName.equals(dialectPrefix + ':' + processorName)
+                || attributeName.equals("data-" + dialectPrefix + '-' + processorName);
+    }
+
+    /**
+     * Scan all the templates under a directory. Template names are the paths
+     * of the files relative to the directory, using {@code /} as the
+     * separator, with the suffix removed.
+     *
+     * @param templateDirectory
+     * @param charset Encoding of the template files.
+     * @return Index of the templates found.
+     * @throws IOException
+     */
+    public LayoutIndex scan(File templateDirectory, final Charset charset) throws IOException {
+        final Path root = templateDirectory.toPath();
+        final List<Path> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && file.getFileName().toString().endsWith(suffix)) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(files);
+
+        List<LayoutIndex.Entry> entries = new ArrayList<>(files.size());
+        for (Path file : files) {
+            String relativePath = root.relativize(file).toString().replace(File.separatorChar, '/');
+            String templateName = relativePath.substring(0, relativePath.length() - suffix.length());
+            try (Reader reader = Files.newBufferedReader(file, charset)) {
+                entries.add(scan(templateName, reader));
+            }
+        }
+        return new LayoutIndex(entries);
+    }
+
+    /**
+     * Scan all the UTF-8 encoded templates under a directory.
+     *
+     * @param templateDirectory
+     * @return Index of the templates found.
+     * @throws IOException
+     */
+    public LayoutIndex scan(File templateDirectory) throws IOException {
+        return scan(templateDirectory, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Scan a single template.
+     *
+     * @param templateName
+     * @param reader Contents of the template.
+     * @return What's known about the template.
+     * @throws IOException If the template couldn't be read or parsed.
+     */
+    public LayoutIndex.Entry scan(String templateName, Reader reader) throws IOException {
+        final EntryBuilder builder = new EntryBuilder(templateName);
+        AbstractSimpleMarkupHandler handler = new AbstractSimpleMarkupHandler() {
+
+            @Override
+            public void handleOpenElement(String elementName, Map<String, String> attributes, int line, int col) {
+                builder.element(attributes);
+            }
+
+            @Override
+            public void handleStandaloneElement(String elementName, Map<String, String> attributes,
+                    boolean minimized, int line, int col) {
+                builder.element(attributes);
+            }
+
+        };
+
+        try {
+            new SimpleMarkupParser(parseConfiguration).parse(reader, handler);
+        } catch (ParseException ex) {
+            throw new IOException("Unable to parse template " + templateName, ex);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Scan a template that has already been parsed by a template engine.
+     *
+     * @param templateName
+     * @param model Model of the entire template.
+     * @return What's known about the template.
+     */
+    public LayoutIndex.Entry scan(String templateName, IModel model) {
+        EntryBuilder builder = new EntryBuilder(templateName);
+        for (int i = 0, size = model.size(); i < size; i++) {
+            ITemplateEvent event = model.get(i);
+            if (event instanceof IProcessableElementTag) {
+                builder.element(((IProcessableElementTag) event).getAttributeMap());
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Collects what's known about a template from the attributes of each of
+     * its elements in turn.
+     */
+    private class EntryBuilder {
+
+        private final String templateName;
+        private String decorateTemplate;
+        private final Set<String> referencedTemplates = new LinkedHashSet<>();
+        private final Set<String> fragmentNames = new LinkedHashSet<>();
+
+        EntryBuilder(String templateName) {
+            this.templateName = templateName;
+        }
+
+        @SuppressWarnings("deprecation")
+        void element(Map<String, String> attributes) {
+            if (attributes == null) {
+                return;
+            }
+            for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                String name = attribute.getKey().toLowerCase(Locale.ROOT);
+                String value = attribute.getValue();
+                if (value == null || !name.contains(dialectPrefix)) {
+                    continue;
+                }
+                if (isAttribute(name, DecorateProcessor.PROCESSOR_NAME)
+                        || isAttribute(name, nz.net.ultraq.thymeleaf.decorators.DecoratorProcessor.PROCESSOR_NAME)) {
+                    String layout = literalTemplateName(value, templateName);
+                    if (layout != null && !layout.equals(templateName)) {
+                        decorateTemplate = layout;
+                    }
+                } else if (isAttribute(name, InsertProcessor.PROCESSOR_NAME)
+                        || isAttribute(name, ReplaceProcessor.PROCESSOR_NAME)
+                        || isAttribute(name, nz.net.ultraq.thymeleaf.includes.IncludeProcessor.PROCESSOR_NAME)) {
+                    String referencedTemplate = literalTemplateName(value, templateName);
+                    if (referencedTemplate != null && !referencedTemplate.equals(templateName)) {
+                        referencedTemplates.add(referencedTemplate);
+                    }
+                } else if (isAttribute(name, FragmentProcessor.PROCESSOR_NAME)) {
+                    int parameters = value.indexOf('(');
+                    String fragmentName = (parameters >= 0 ? value.substring(0, parameters) : value).trim();
+                    if (!fragmentName.isEmpty()) {
+                        fragmentNames.add(fragmentName);
+                    }
+                }
+            }
+        }
+
+        LayoutIndex.Entry build() {
+            return new LayoutIndex.Entry(templateName, decorateTemplate, referencedTemplates, fragmentNames);
+        }
+
+    }
+
+}
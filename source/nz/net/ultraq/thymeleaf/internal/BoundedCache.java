@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A size-bounded cache that evicts entries which haven't been used recently.
+ * Reads don't take a lock, as the caches of the layout dialect are read by
+ * every request but only written when something new is worked out.
+ *
+ * <p>
+ * Eviction is approximately least-recently-used: entries are kept in the
+ * order they were added, and reading an entry marks it as used. When the
+ * cache is full, the oldest entries are looked at in turn, those marked
+ * being unmarked and given another go at the back, until one that hasn't
+ * been used since it was last looked at is found and evicted. Changes to the
+ * cache synchronize on the cache itself.
+ *
+ * @author zhanhb
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of cached values
+ */
+public class BoundedCache<K, V> {
+
+    private final int maxSize;
+    private final ConcurrentHashMap<K, Node<K, V>> map = new ConcurrentHashMap<>();
+    private final ArrayDeque<Node<K, V>> order = new ArrayDeque<>();
+
+    /**
+     * Constructor, create a cache holding at most {@code maxSize} entries.
+     *
+     * @param maxSize
+     */
+    public BoundedCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    public V get(K key) {
+        Node<K, V> node = map.get(key);
+        if (node == null) {
+            return null;
+        }
+        // Only write when the mark changes, so entries read all the time aren't
+        // written to all the time
+        if (!node.used) {
+            node.used = true;
+        }
+        return node.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        Node<K, V> node = map.get(key);
+        if (node != null) {
+            node.value = value;
+            return;
+        }
+        node = new Node<>(key, value);
+        map.put(key, node);
+        order.add(node);
+        while (map.size() > maxSize) {
+            Node<K, V> eldest = order.poll();
+            if (eldest.used) {
+                eldest.used = false;
+                order.add(eldest);
+            } else {
+                map.remove(eldest.key);
+            }
+        }
+    }
+
+    public synchronized V remove(K key) {
+        Node<K, V> node = map.remove(key);
+        if (node == null) {
+            return null;
+        }
+        order.remove(node);
+        return node.value;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        order.clear();
+    }
+
+    /**
+     * @return A copy of the keys currently in the cache, in no particular
+     * order.
+     */
+    public List<K> keys() {
+        return new ArrayList<>(map.keySet());
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    private static final class Node<K, V> {
+
+        final K key;
+        volatile V value;
+        volatile boolean used;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+
+    }
+
+}
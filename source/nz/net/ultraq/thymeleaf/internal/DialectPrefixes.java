@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.internal;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.thymeleaf.DialectConfiguration;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.dialect.IProcessorDialect;
+
+/**
+ * Prefixes of the dialects configured with an engine, one table per engine
+ * configuration. A prefix is resolved from the dialect configurations the
+ * first time it's asked for, after which looking it up is a single map read.
+ *
+ * @author zhanhb
+ */
+public class DialectPrefixes {
+
+    public static final String EXECUTION_ATTRIBUTE_NAME = "LayoutDialect::DialectPrefixes";
+
+    // Stands in for dialects without a prefix, as the map can't hold nulls
+    private static final Object NO_PREFIX = new Object();
+
+    /**
+     * Returns the table registered by the layout dialect with the given
+     * configuration.
+     *
+     * @param configuration
+     * @return The table for the configuration, or {@code null} if the layout
+     * dialect didn't register one.
+     */
+    @Nullable
+    public static DialectPrefixes forConfiguration(@Nullable IEngineConfiguration configuration) {
+        if (configuration == null) {
+            return null;
+        }
+        Map<String, Object> executionAttributes = configuration.getExecutionAttributes();
+        Object prefixes = executionAttributes != null ? executionAttributes.get(EXECUTION_ATTRIBUTE_NAME) : null;
+        return prefixes instanceof DialectPrefixes ? (DialectPrefixes) prefixes : null;
+    }
+
+    /**
+     * Works out the prefix of a dialect from the dialect configurations of an
+     * engine.
+     *
+     * @param configuration
+     * @param dialectClass
+     * @return The configured prefix for the dialect, or {@code null} if the
+     * dialect hasn't been configured.
+     */
+    @Nullable
+    public static String resolve(@Nonnull IEngineConfiguration configuration, Class<? extends IProcessorDialect> dialectClass) {
+        for (DialectConfiguration dialectConfig : configuration.getDialectConfigurations()) {
+            if (dialectClass.isInstance(dialectConfig.getDialect())) {
+                if (dialectConfig.isPrefixSpecified()) {
+                    return dialectConfig.getPrefix();
+                }
+                return ((IProcessorDialect) dialectConfig.getDialect()).getPrefix();
+            }
+        }
+        return null;
+    }
+
+    private final ConcurrentMap<Class<?>, Object> prefixes = new ConcurrentHashMap<>(4);
+
+    /**
+     * Returns the prefix of a dialect, resolving it against the configuration
+     * this table belongs to if it hasn't been already.
+     *
+     * @param configuration
+     * @param dialectClass
+     * @return The configured prefix for the dialect, or {@code null} if the
+     * dialect hasn't been configured.
+     */
+    @Nullable
+    public String getPrefix(@Nonnull IEngineConfiguration configuration, Class<? extends IProcessorDialect> dialectClass) {
+        Object prefix = prefixes.get(dialectClass);
+        if (prefix == null) {
+            String resolved = resolve(configuration, dialectClass);
+            prefix = resolved != null ? resolved : NO_PREFIX;
+            prefixes.putIfAbsent(dialectClass, prefix);
+        }
+        return prefix != NO_PREFIX ? (String) prefix : null;
+    }
+
+}
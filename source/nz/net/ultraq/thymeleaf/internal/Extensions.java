@@ -26,7 +26,8 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import nz.net.ultraq.thymeleaf.models.extensions.ChildModelIterator;
 import nz.net.ultraq.thymeleaf.models.extensions.EventIterator;
-import org.thymeleaf.DialectConfiguration;
+import nz.net.ultraq.thymeleaf.models.extensions.ModelView;
+import org.thymeleaf.IEngineConfiguration;
 import org.thymeleaf.context.IContext;
 import org.thymeleaf.context.IEngineContext;
 import org.thymeleaf.context.IExpressionContext;
@@ -59,8 +60,6 @@ import org.thymeleaf.model.IText;
  */
 public class Extensions {
 
-    private static final String DIALECT_PREFIX_PREFIX = "DialectPrefix::";
-
     /**
      * Set that a model evaluates to 'false' if it has no events.
      *
@@ -262,19 +261,24 @@ public class Extensions {
      * This doesn't use an equality check, but an object reference check, so if
      * a submodel is ever located from a parent (eg: any of the {@code find}
      * methods, you can use this method to find the location of that submodel
-     * within the event queue.
+     * within the event queue. Submodels that are views over this model already
+     * know where they are, so no search is needed for those.
      *
      * @param model
      * @return Index of an extracted submodel within this model.
      */
     public static int findIndexOfModel(@Nonnull IModel delegate, IModel model) {
+        if (model instanceof ModelView && ((ModelView) model).getParent() == delegate) {
+            return ((ModelView) model).getOffset();
+        }
         ITemplateEvent modelEvent = first(model);
         return findIndexOf(delegate, event -> equals(event, modelEvent));
     }
 
     /**
      * Returns the first instance of a model that meets the given closure
-     * criteria.
+     * criteria. The model is a view over this one that carries its position,
+     * so it can be replaced without having to look for it again.
      *
      * @param delegate
      * @param closure
@@ -282,8 +286,9 @@ public class Extensions {
      * {@code null} if nothing matched.
      */
     @Nullable
-    public static IModel findModel(@Nonnull IModel delegate, @Nonnull ITemplateEventPredicate closure) {
-        return getModel(delegate, findIndexOf(delegate, closure));
+    public static ModelView findModel(@Nonnull IModel delegate, @Nonnull ITemplateEventPredicate closure) {
+        int index = findIndexOf(delegate, closure);
+        return index != -1 ? new ModelView(delegate, index, sizeOfModelAt(delegate, index)) : null;
     }
 
     /**
@@ -329,11 +334,12 @@ public class Extensions {
      * @param model
      * @param modelFactory
      */
-    @SuppressWarnings("null")
+    @SuppressWarnings({"null", "AssignmentToMethodParameter"})
     public static void insertModelWithWhitespace(@Nonnull IModel delegate, int pos,
             @Nullable IModel model, @Nonnull IModelFactory modelFactory) {
 
         if (0 <= pos && pos <= delegate.size()) {
+            model = materialize(model);
 
             // Use existing whitespace found at or before the insertion point
             IModel whitespace = getModel(delegate, pos);
@@ -453,15 +459,25 @@ public class Extensions {
         return delegate.get(delegate.size() - 1);
     }
 
+    /**
+     * Copies a {@link ModelView} into a model of its own, so that inserting it
+     * into another model is a bulk copy rather than one event at a time.
+     *
+     * @param model
+     * @return A copy of the model if it was a view, otherwise the model itself.
+     */
+    @Nullable
+    public static IModel materialize(@Nullable IModel model) {
+        return model instanceof ModelView ? model.cloneModel() : model;
+    }
+
     /**
      * If the model represents an element open to close tags, then this method
      * removes all of the inner events.
      */
     public static void removeChildren(@Nonnull IModel delegate) {
         if (isElement(delegate)) {
-            while (delegate.size() > 2) {
-                delegate.remove(1);
-            }
+            splice(delegate, 1, delegate.size() - 2, null);
         }
     }
 
@@ -494,11 +510,7 @@ public class Extensions {
      */
     public static void removeModel(@Nonnull IModel delegate, int pos) {
         if (0 <= pos && pos < delegate.size()) {
-            int modelSize = sizeOfModelAt(delegate, pos);
-            while (modelSize > 0) {
-                delegate.remove(pos);
-                modelSize--;
-            }
+            splice(delegate, pos, sizeOfModelAt(delegate, pos), null);
         }
     }
 
@@ -511,10 +523,7 @@ public class Extensions {
      */
     public static void replaceModel(@Nonnull IModel delegate, int pos, @Nullable IModel model) {
         if (0 <= pos && pos < delegate.size()) {
-            removeModel(delegate, pos);
-            // noop if model is null
-            // https://github.com/thymeleaf/thymeleaf/blob/thymeleaf-3.0.11.RELEASE/src/main/java/org/thymeleaf/engine/Model.java#L206
-            delegate.insertModel(pos, model);
+            splice(delegate, pos, sizeOfModelAt(delegate, pos), model);
         }
     }
 
@@ -523,6 +532,11 @@ public class Extensions {
      * return the 'size' of that element (number of events from here to its
      * matching closing tag).
      *
+     * <p>
+     * This is answered from the index of an {@link IndexedModel}, or of the
+     * indexed model a {@link ModelView} is over, without going through the
+     * events.
+     *
      * @param delegate
      * @param index
      * @return Size of an element from the given position, or 1 if the event at
@@ -530,6 +544,21 @@ public class Extensions {
      */
     @SuppressWarnings("ValueOfIncrementOrDecrementUsed")
     public static int sizeOfModelAt(@Nonnull IModel delegate, int index) {
+        if (delegate instanceof IndexedModel) {
+            int size = ((IndexedModel) delegate).getIndex().sizeOfModelAt(index);
+            if (size != -1) {
+                return size;
+            }
+        } else if (delegate instanceof ModelView && ((ModelView) delegate).getParent() instanceof IndexedModel) {
+            ModelView view = (ModelView) delegate;
+            if (0 <= index && index < view.size()) {
+                int size = ((IndexedModel) view.getParent()).getIndex().sizeOfModelAt(view.getOffset() + index);
+                if (size != -1 && index + size <= view.size()) {
+                    return size;
+                }
+            }
+        }
+
         int eventIndex = index;
         ITemplateEvent event = delegate.get(eventIndex++);
 
@@ -557,6 +586,58 @@ public class Extensions {
         return 1;
     }
 
+    /**
+     * Replaces {@code count} events from the given position with the events of
+     * another model, or just removes them if there is no other model.
+     * <p>
+     * Removing events one at a time from the middle of a model shifts all the
+     * events after them each time. Instead, the events after the range are set
+     * aside, everything from the position onwards is removed from the end
+     * (which shifts nothing), and then the new events and the set aside ones
+     * are added back, so each event is moved at most twice.
+     *
+     * @param delegate
+     * @param pos
+     * @param count
+     * @param model
+     */
+    @SuppressWarnings("AssignmentToMethodParameter")
+    public static void splice(@Nonnull IModel delegate, int pos, int count, @Nullable IModel model) {
+        int size = delegate.size();
+        if (pos < 0 || count < 0 || pos + count > size) {
+            throw new IndexOutOfBoundsException("pos: " + pos + ", count: " + count + ", size: " + size);
+        }
+        model = materialize(model);
+        if (count == 0) {
+            delegate.insertModel(pos, model);
+            return;
+        }
+        if (count == 1 && model == null) {
+            delegate.remove(pos);
+            return;
+        }
+
+        int end = pos + count;
+        ITemplateEvent[] tail = new ITemplateEvent[size - end];
+        for (int i = 0; i < tail.length; i++) {
+            tail[i] = delegate.get(end + i);
+        }
+        if (pos == 0) {
+            delegate.reset();
+        } else {
+            for (int i = size - 1; i >= pos; i--) {
+                delegate.remove(i);
+            }
+        }
+
+        // noop if model is null
+        // https://github.com/thymeleaf/thymeleaf/blob/thymeleaf-3.0.11.RELEASE/src/main/java/org/thymeleaf/engine/Model.java#L206
+        delegate.addModel(model);
+        for (ITemplateEvent event : tail) {
+            delegate.add(event);
+        }
+    }
+
     /**
      * Removes whitespace events from the head and tail of the model's
      * underlying event queue.
@@ -707,13 +788,25 @@ public class Extensions {
     }
 
     /**
-     * Returns whether or not this text event is collapsible whitespace.
+     * Returns whether or not this text event is collapsible whitespace. The
+     * text is checked in place, without creating a string of it.
      *
      * @param delegate
      * @return {@code true} if, when trimmed, the text content is empty.
      */
     public static boolean isWhitespace(@Nonnull IText delegate) {
-        return delegate.getText().trim().isEmpty();
+        return isWhitespace(delegate, delegate.length());
+    }
+
+    // Same as String.trim(), which treats everything up to the space character
+    // as whitespace
+    private static boolean isWhitespace(CharSequence text, int length) {
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -732,13 +825,13 @@ public class Extensions {
             return getOrCreate((IEngineContext) delegate, key, closure);
         }
 
-        ConcurrentMap<String, T> dialectPrefixCache = DialectPrefixCacheHolder.getDialectPrefixCache(delegate);
+        ConcurrentMap<String, T> contextCache = ContextCacheHolder.getContextCache(delegate);
 
-        T value = dialectPrefixCache.get(key);
+        T value = contextCache.get(key);
         if (value == null) {
             value = closure.get();
             if (value != null) {
-                dialectPrefixCache.putIfAbsent(key, value);
+                contextCache.putIfAbsent(key, value);
             }
         }
         return value;
@@ -764,17 +857,10 @@ public class Extensions {
      * dialect being queried hasn't been configured.
      */
     public static String getPrefixForDialect(@Nonnull IExpressionContext delegate, Class<? extends IProcessorDialect> dialectClass) {
-        return getOrCreate(delegate, DIALECT_PREFIX_PREFIX + dialectClass.getName(), () -> {
-            for (DialectConfiguration dialectConfig : delegate.getConfiguration().getDialectConfigurations()) {
-                if (dialectClass.isInstance(dialectConfig.getDialect())) {
-                    if (dialectConfig.isPrefixSpecified()) {
-                        return dialectConfig.getPrefix();
-                    }
-                    return ((IProcessorDialect) dialectConfig.getDialect()).getPrefix();
-                }
-            }
-            return null;
-        });
+        IEngineConfiguration configuration = delegate.getConfiguration();
+        DialectPrefixes dialectPrefixes = DialectPrefixes.forConfiguration(configuration);
+        return dialectPrefixes != null ? dialectPrefixes.getPrefix(configuration, dialectClass)
+                : DialectPrefixes.resolve(configuration, dialectClass);
     }
 
     private Extensions() {
@@ -782,17 +868,17 @@ public class Extensions {
     }
 
     @SuppressWarnings({"UtilityClassWithoutPrivateConstructor", "NestedAssignment", "rawtypes", "unchecked"})
-    private static class DialectPrefixCacheHolder {
+    private static class ContextCacheHolder {
 
         private static final ConcurrentWeakIdentityHashMap<IContext, ConcurrentMap<String, Object>> CACHE
                 = new ConcurrentWeakIdentityHashMap<>(20);
 
-        static <T> ConcurrentMap<String, T> getDialectPrefixCache(IContext delegate) {
-            ConcurrentMap dialectPrefixCache, newCache;
-            return (dialectPrefixCache = CACHE.get(delegate)) == null
-                    && (dialectPrefixCache = CACHE.putIfAbsent(delegate,
+        static <T> ConcurrentMap<String, T> getContextCache(IContext delegate) {
+            ConcurrentMap contextCache, newCache;
+            return (contextCache = CACHE.get(delegate)) == null
+                    && (contextCache = CACHE.putIfAbsent(delegate,
                             newCache = new ConcurrentHashMap<>(4))) == null
-                            ? newCache : dialectPrefixCache;
+                            ? newCache : contextCache;
         }
 
     }
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.internal;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Java Flight Recorder event type for the layout dialect. The JFR API is
+ * only available from some Java 8 updates onwards, so event types are made
+ * through {@code jdk.jfr.EventFactory} by reflection. Without the API, or when
+ * no recording has the event enabled, {@link #begin()} returns {@code null}
+ * and nothing else is done.
+ * <p>
+ * Usage, with the {@code null} check keeping the field values from being
+ * worked out when they aren't needed:
+ * <pre>
+ * Object event = FlightRecorderEvent.DECORATE.begin();
+ * ...
+ * if (event != null) {
+ *     FlightRecorderEvent.DECORATE.commit(event, contentTemplate, ...);
+ * }
+ * </pre>
+ *
+ * @author zhanhb
+ */
+public final class FlightRecorderEvent {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlightRecorderEvent.class);
+
+    private static final String[] CATEGORY = {"Thymeleaf", "Layout Dialect"};
+
+    // Must come before the event types, which use it
+    @Nullable
+    private static final Api API = Api.load();
+
+    /**
+     * Decoration of a layout by a content template.
+     */
+    public static final FlightRecorderEvent DECORATE = new FlightRecorderEvent(
+            "nz.net.ultraq.thymeleaf.Decorate", "Layout Decoration",
+            "Decoration of a layout template using a content template",
+            new Field(String.class, "contentTemplate", "Content Template"),
+            new Field(String.class, "layoutTemplate", "Layout Template"),
+            new Field(int.class, "contentModelSize", "Content Model Size"),
+            new Field(int.class, "layoutModelSize", "Layout Model Size"));
+
+    /**
+     * Parsing of a template, or part of one, to find a model in it.
+     */
+    public static final FlightRecorderEvent FIND_TEMPLATE_MODEL = new FlightRecorderEvent(
+            "nz.net.ultraq.thymeleaf.FindTemplateModel", "Layout Template Model Lookup",
+            "Parsing of a template for the layout dialect, limited to the selector if there is one",
+            new Field(String.class, "template", "Template"),
+            new Field(String.class, "selector", "Selector"));
+
+    /**
+     * Merging of the {@code <head>} sections of a layout and content template.
+     */
+    public static final FlightRecorderEvent MERGE_HEAD = new FlightRecorderEvent(
+            "nz.net.ultraq.thymeleaf.MergeHead", "Layout Head Merging",
+            "Merging of the <head> elements of a content template into those of its layout",
+            new Field(int.class, "childrenMerged", "Children Merged"),
+            new Field(String.class, "sortingStrategy", "Sorting Strategy"));
+
+    @Nullable
+    private final Object factory;
+    @Nullable
+    private final Object eventType;
+
+    private FlightRecorderEvent(String name, String label, String description, Field... fields) {
+        Object eventFactory = null;
+        Object type = null;
+        if (API != null) {
+            try {
+                eventFactory = API.create(name, label, description, fields);
+                type = API.getEventType.invoke(eventFactory);
+            } catch (ReflectiveOperationException | RuntimeException ex) {
+                logger.debug("Unable to create the flight recorder event {}", name, ex);
+                eventFactory = null;
+            }
+        }
+        this.factory = eventFactory;
+        this.eventType = type;
+    }
+
+    /**
+     * Returns whether events of this type can be recorded in this JVM at all.
+     *
+     * @return {@code true} if the JFR API is available and the event type was
+     * registered with it.
+     */
+    public boolean isAvailable() {
+        return factory != null;
+    }
+
+    /**
+     * Starts timing a new event of this type, if any recording wants it.
+     *
+     * @return The started event, or {@code null} if it won't be recorded.
+     */
+    @Nullable
+    public Object begin() {
+        if (factory == null) {
+            return null;
+        }
+        try {
+            if (!(Boolean) API.isEnabled.invoke(eventType)) {
+                return null;
+            }
+            Object event = API.newEvent.invoke(factory);
+            API.begin.invoke(event);
+            return event;
+        } catch (ReflectiveOperationException ex) {
+            logger.debug("Unable to begin a flight recorder event", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Ends an event returned by {@link #begin()}, setting its fields to the
+     * given values in the order the fields were declared, and records it.
+     *
+     * @param event
+     * @param values
+     */
+    public void commit(@Nullable Object event, Object... values) {
+        if (event == null) {
+            return;
+        }
+        try {
+            API.end.invoke(event);
+            for (int i = 0; i < values.length; i++) {
+                API.set.invoke(event, i, values[i]);
+            }
+            API.commit.invoke(event);
+        } catch (ReflectiveOperationException ex) {
+            logger.debug("Unable to commit a flight recorder event", ex);
+        }
+    }
+
+    /**
+     * A field of an event type.
+     */
+    private static final class Field {
+
+        final Class<?> type;
+        final String name;
+        final String label;
+
+        Field(Class<?> type, String name, String label) {
+            this.type = type;
+            this.name = name;
+            this.label = label;
+        }
+
+    }
+
+    /**
+     * Reflective handles on the parts of the JFR API that are used.
+     */
+    private static final class Api {
+
+        @Nullable
+        static Api load() {
+            try {
+                return new Api();
+            } catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+                logger.debug("Java Flight Recorder API not available, layout dialect events won't be recorded", ex);
+                return null;
+            }
+        }
+
+        private static Class<?> type(String name) throws ClassNotFoundException {
+            return Class.forName(name, false, ClassLoader.getSystemClassLoader());
+        }
+
+        final Method create;
+        final Method getEventType;
+        final Method newEvent;
+        final Method isEnabled;
+        final Method begin;
+        final Method end;
+        final Method set;
+        final Method commit;
+        final Constructor<?> annotationElement;
+        final Constructor<?> valueDescriptor;
+        final Class<?> nameAnnotation;
+        final Class<?> labelAnnotation;
+        final Class<?> descriptionAnnotation;
+        final Class<?> categoryAnnotation;
+
+        private Api() throws ReflectiveOperationException {
+            Class<?> eventFactoryClass = type("jdk.jfr.EventFactory");
+            Class<?> eventClass = type("jdk.jfr.Event");
+            Class<?> annotationElementClass = type("jdk.jfr.AnnotationElement");
+            create = eventFactoryClass.getMethod("create", List.class, List.class);
+            getEventType = eventFactoryClass.getMethod("getEventType");
+            newEvent = eventFactoryClass.getMethod("newEvent");
+            isEnabled = type("jdk.jfr.EventType").getMethod("isEnabled");
+            begin = eventClass.getMethod("begin");
+            end = eventClass.getMethod("end");
+            set = eventClass.getMethod("set", int.class, Object.class);
+            commit = eventClass.getMethod("commit");
+            annotationElement = annotationElementClass.getConstructor(Class.class, Object.class);
+            valueDescriptor = type("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+            nameAnnotation = type("jdk.jfr.Name");
+            labelAnnotation = type("jdk.jfr.Label");
+            descriptionAnnotation = type("jdk.jfr.Description");
+            categoryAnnotation = type("jdk.jfr.Category");
+        }
+
+        private Object annotation(Class<?> annotationType, Object value) throws ReflectiveOperationException {
+            return annotationElement.newInstance(annotationType, value);
+        }
+
+        Object create(String name, String label, String description, Field... fields) throws ReflectiveOperationException {
+            List<Object> annotations = Arrays.asList(
+                    annotation(nameAnnotation, name),
+                    annotation(labelAnnotation, label),
+                    annotation(descriptionAnnotation, description),
+                    annotation(categoryAnnotation, CATEGORY.clone())
+            );
+            List<Object> valueDescriptors = new ArrayList<>(fields.length);
+            for (Field field : fields) {
+                valueDescriptors.add(valueDescriptor.newInstance(field.type, field.name,
+                        Collections.singletonList(annotation(labelAnnotation, field.label))));
+            }
+            return create.invoke(null, annotations, valueDescriptors);
+        }
+
+    }
+
+}
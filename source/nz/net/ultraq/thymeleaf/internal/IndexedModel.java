@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.internal;
+
+import java.io.IOException;
+import java.io.Writer;
+import javax.annotation.Nonnull;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.model.IModel;
+import org.thymeleaf.model.IModelVisitor;
+import org.thymeleaf.model.ITemplateEvent;
+import org.thymeleaf.templatemode.TemplateMode;
+
+/**
+ * A model that keeps a {@link ModelIndex} of its element structure, built the
+ * first time it's needed and thrown away whenever the model is modified. The
+ * {@link Extensions} methods that work out element extents use the index when
+ * given one of these models, so walking the same model many times, as is done
+ * when locating fragments, stays linear. As any change means indexing the
+ * whole model again, it's best suited to models that are read far more often
+ * than they are modified.
+ *
+ * @author zhanhb
+ */
+public class IndexedModel implements IModel {
+
+    /**
+     * Returns the given model as an indexed model, wrapping it if it isn't one
+     * already.
+     *
+     * @param model
+     * @return An indexed view over the model.
+     */
+    public static IndexedModel of(@Nonnull IModel model) {
+        return model instanceof IndexedModel ? (IndexedModel) model : new IndexedModel(model);
+    }
+
+    private final IModel delegate;
+    private ModelIndex index;
+
+    /**
+     * Constructor, wrap the given model. Changes should be made through this
+     * model from now on, otherwise the index can't know to rebuild itself.
+     *
+     * @param delegate
+     */
+    public IndexedModel(@Nonnull IModel delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Returns the wrapped model.
+     *
+     * @return The model this one delegates to.
+     */
+    public IModel getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Returns the structure of this model, indexing it if it has changed since
+     * it was last asked for.
+     *
+     * @return Index of the model's elements.
+     */
+    public ModelIndex getIndex() {
+        ModelIndex result = index;
+        if (result == null) {
+            result = new ModelIndex(delegate);
+            index = result;
+        }
+        return result;
+    }
+
+    @Override
+    public IEngineConfiguration getConfiguration() {
+        return delegate.getConfiguration();
+    }
+
+    @Override
+    public TemplateMode getTemplateMode() {
+        return delegate.getTemplateMode();
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public ITemplateEvent get(int pos) {
+        return delegate.get(pos);
+    }
+
+    @Override
+    public void add(ITemplateEvent event) {
+        index = null;
+        delegate.add(event);
+    }
+
+    @Override
+    public void insert(int pos, ITemplateEvent event) {
+        index = null;
+        delegate.insert(pos, event);
+    }
+
+    @Override
+    public void replace(int pos, ITemplateEvent event) {
+        index = null;
+        delegate.replace(pos, event);
+    }
+
+    @Override
+    public void addModel(IModel model) {
+        index = null;
+        delegate.addModel(unwrap(model));
+    }
+
+    @Override
+    public void insertModel(int pos, IModel model) {
+        index = null;
+        delegate.insertModel(pos, unwrap(model));
+    }
+
+    @Override
+    public void remove(int pos) {
+        index = null;
+        delegate.remove(pos);
+    }
+
+    @Override
+    public void reset() {
+        index = null;
+        delegate.reset();
+    }
+
+    @Override
+    public IModel cloneModel() {
+        return delegate.cloneModel();
+    }
+
+    @Override
+    public void accept(IModelVisitor visitor) {
+        delegate.accept(visitor);
+    }
+
+    @Override
+    public void write(Writer writer) throws IOException {
+        delegate.write(writer);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    // Thymeleaf's models only copy other models of their own kind in bulk
+    private static IModel unwrap(IModel model) {
+        return model instanceof IndexedModel ? ((IndexedModel) model).delegate : model;
+    }
+
+}
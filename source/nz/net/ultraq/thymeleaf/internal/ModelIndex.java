@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.internal;
+
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+import org.thymeleaf.model.ICloseElementTag;
+import org.thymeleaf.model.IModel;
+import org.thymeleaf.model.IOpenElementTag;
+import org.thymeleaf.model.ITemplateEvent;
+
+/**
+ * The element structure of a model, worked out in a single pass over its
+ * events so that element extents, parents and children can then be looked up
+ * in constant time. The index is a snapshot, and is no longer accurate once
+ * the model it was built from is modified.
+ *
+ * @author zhanhb
+ * @see IndexedModel
+ */
+public class ModelIndex {
+
+    private final int[] closingIndexes;
+    private final int[] parentIndexes;
+
+    /**
+     * Constructor, index the given model.
+     *
+     * @param model
+     */
+    public ModelIndex(@Nonnull IModel model) {
+        int size = model.size();
+        int[] closing = new int[size];
+        int[] parents = new int[size];
+        int[] stack = new int[16];
+        int depth = 0;
+
+        for (int i = 0; i < size; i++) {
+            ITemplateEvent event = model.get(i);
+            parents[i] = depth > 0 ? stack[depth - 1] : -1;
+            closing[i] = i;
+            if (event instanceof IOpenElementTag) {
+                // Stays -1 if the element is never closed
+                closing[i] = -1;
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth << 1);
+                }
+                stack[depth++] = i;
+            } else if (event instanceof ICloseElementTag) {
+                // Unmatched closing tags do not correspond to any opening element,
+                // and so should not affect the model level.
+                if (!((ICloseElementTag) event).isUnmatched() && depth > 0) {
+                    int opening = stack[--depth];
+                    closing[opening] = i;
+                    parents[i] = parents[opening];
+                }
+            }
+        }
+
+        this.closingIndexes = closing;
+        this.parentIndexes = parents;
+    }
+
+    /**
+     * Returns the number of events indexed.
+     *
+     * @return Size of the indexed model.
+     */
+    public int size() {
+        return closingIndexes.length;
+    }
+
+    /**
+     * Returns the position of the event that closes the element at the given
+     * position.
+     *
+     * @param index
+     * @return Position of the matching closing element, the same position if
+     * the event there isn't an opening element, or -1 if the element is never
+     * closed.
+     */
+    public int closingIndexOf(int index) {
+        return closingIndexes[index];
+    }
+
+    /**
+     * Returns the position of the element that contains the event at the given
+     * position.
+     *
+     * @param index
+     * @return Position of the opening event of the parent element, or -1 if the
+     * event is at the top level of the model.
+     */
+    public int parentIndexOf(int index) {
+        return parentIndexes[index];
+    }
+
+    /**
+     * Returns the 'size' of the model at the given position, the number of
+     * events from there to its matching closing tag.
+     *
+     * @param index
+     * @return Size of the element at the position, 1 if the event there isn't
+     * an opening element, or -1 if the element is never closed.
+     */
+    public int sizeOfModelAt(int index) {
+        int closing = closingIndexes[index];
+        return closing == -1 ? -1 : closing - index + 1;
+    }
+
+    /**
+     * Returns the position of the next event or element following the one at
+     * the given position, which is its next sibling if it has one.
+     *
+     * @param index
+     * @return Position after the model at the given position, or -1 if the
+     * element is never closed.
+     */
+    public int nextIndexOf(int index) {
+        int closing = closingIndexes[index];
+        return closing == -1 ? -1 : closing + 1;
+    }
+
+    /**
+     * Returns the range of events making up the children of the element at the
+     * given position.
+     *
+     * @param index
+     * @return Start (inclusive) and end (exclusive) positions of the children,
+     * which are equal if the event has no children, or {@code null} if the
+     * element is never closed.
+     */
+    public int[] childRangeOf(int index) {
+        int closing = closingIndexes[index];
+        if (closing == -1) {
+            return null;
+        }
+        return closing == index ? new int[]{index + 1, index + 1} : new int[]{index + 1, closing};
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.internal;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nullable;
+import nz.net.ultraq.thymeleaf.models.TemplateFragmentIndex;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.cache.ICacheEntryValidity;
+import org.thymeleaf.engine.TemplateData;
+import org.thymeleaf.engine.TemplateModel;
+
+/**
+ * Cache of what the layout dialect works out from the template models handed
+ * out by Thymeleaf's template manager, one per engine configuration. The
+ * models themselves are left to Thymeleaf's own template cache, and entries
+ * here are kept against the very models they were made from, so clearing or
+ * expiring Thymeleaf's cache results in new models and so new entries.
+ *
+ * @author zhanhb
+ */
+public class TemplateModelCache {
+
+    public static final String EXECUTION_ATTRIBUTE_NAME = "LayoutDialect::TemplateModelCache";
+    public static final int DEFAULT_MAX_SIZE = 200;
+
+    /**
+     * Returns the cache registered by the layout dialect with the given
+     * configuration.
+     *
+     * @param configuration
+     * @return The cache for the configuration, or {@code null} if the layout
+     * dialect didn't register one.
+     */
+    @Nullable
+    public static TemplateModelCache forConfiguration(@Nullable IEngineConfiguration configuration) {
+        if (configuration == null) {
+            return null;
+        }
+        Map<String, Object> executionAttributes = configuration.getExecutionAttributes();
+        Object cache = executionAttributes != null ? executionAttributes.get(EXECUTION_ATTRIBUTE_NAME) : null;
+        return cache instanceof TemplateModelCache ? (TemplateModelCache) cache : null;
+    }
+
+    private static boolean isCacheable(TemplateData templateData) {
+        ICacheEntryValidity validity = templateData.getValidity();
+        return validity != null && validity.isCacheable();
+    }
+
+    private final ConcurrentWeakIdentityHashMap<TemplateModel, Boolean> models = new ConcurrentWeakIdentityHashMap<>(64);
+    private final BoundedCache<Key, TemplateFragmentIndex> fragmentIndexes;
+
+    public TemplateModelCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public TemplateModelCache(int maxSize) {
+        this.fragmentIndexes = new BoundedCache<>(maxSize);
+    }
+
+    /**
+     * Records a model handed out by the template manager, returning whether it
+     * had been handed out before. Thymeleaf returns the same model for as long
+     * as it keeps a template in its cache, so this tells whether the template
+     * had to be parsed. Only used to report lookups to the metrics listener,
+     * so isn't called unless there is one.
+     *
+     * @param model
+     * @return {@code true} if the model was already seen, ie: it came from
+     * Thymeleaf's template cache.
+     */
+    public boolean seen(TemplateModel model) {
+        return models.putIfAbsent(model, Boolean.TRUE) != null;
+    }
+
+    /**
+     * Returns a previously cached fragment index.
+     *
+     * @param key
+     * @return The cached index, or {@code null} if there isn't one.
+     */
+    @Nullable
+    public TemplateFragmentIndex getFragmentIndex(Key key) {
+        return fragmentIndexes.get(key);
+    }
+
+    /**
+     * Caches a fragment index if its template resolution allows it.
+     *
+     * @param key
+     * @param fragmentIndex
+     */
+    public void putFragmentIndex(Key key, TemplateFragmentIndex fragmentIndex) {
+        if (isCacheable(fragmentIndex.getTemplateData())) {
+            fragmentIndexes.put(key, fragmentIndex);
+        }
+    }
+
+    /**
+     * Evicts the fragment indexes of the given templates.
+     *
+     * @param templateNames
+     */
+    public void invalidate(Collection<String> templateNames) {
+        for (Key key : fragmentIndexes.keys()) {
+            if (templateNames.contains(key.templateModel.getTemplateData().getTemplate())) {
+                fragmentIndexes.remove(key);
+            }
+        }
+    }
+
+    public void clear() {
+        fragmentIndexes.clear();
+    }
+
+    public int size() {
+        return fragmentIndexes.size();
+    }
+
+    /**
+     * Identifies something worked out from a template model with the layout
+     * dialect's prefix. Models are compared by identity.
+     */
+    public static final class Key {
+
+        private final TemplateModel templateModel;
+        private final String dialectPrefix;
+        private final int hash;
+
+        public Key(TemplateModel templateModel, @Nullable String dialectPrefix) {
+            this.templateModel = templateModel;
+            this.dialectPrefix = dialectPrefix;
+            this.hash = System.identityHashCode(templateModel) * 31 + Objects.hashCode(dialectPrefix);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return templateModel == other.templateModel
+                    && Objects.equals(dialectPrefix, other.dialectPrefix);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
@@ -15,13 +15,16 @@
  */
 package nz.net.ultraq.thymeleaf.models;
 
+import java.util.Objects;
 import nz.net.ultraq.thymeleaf.LayoutDialect;
 import nz.net.ultraq.thymeleaf.fragments.CollectFragmentProcessor;
 import nz.net.ultraq.thymeleaf.fragments.FragmentProcessor;
 import nz.net.ultraq.thymeleaf.internal.Extensions;
 import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.engine.AttributeName;
 import org.thymeleaf.model.IAttribute;
 import org.thymeleaf.model.IModel;
+import org.thymeleaf.model.IModelFactory;
 import org.thymeleaf.model.IProcessableElementTag;
 import org.thymeleaf.standard.StandardDialect;
 import org.thymeleaf.standard.processor.StandardWithTagProcessor;
@@ -68,9 +71,12 @@ public class AttributeMerger implements ModelMerger {
         IModel mergedModel = targetModel.cloneModel();
         String layoutDialectPrefix = Extensions.getPrefixForDialect(context, LayoutDialect.class);
         String standardDialectPrefix = Extensions.getPrefixForDialect(context, StandardDialect.class);
+        IModelFactory modelFactory = context.getModelFactory();
 
         // Merge attributes from the source model's root event to the target model's root event
         // TODO nullable
+        IProcessableElementTag targetEvent = (IProcessableElementTag) Extensions.first(mergedModel);
+        IProcessableElementTag mergedEvent = targetEvent;
         for (IAttribute sourceAttribute : ((IProcessableElementTag) sourceModel.get(0)).getAllAttributes()) {
             // Don't include layout:fragment processors
             if (Extensions.equalsName(sourceAttribute, layoutDialectPrefix, FragmentProcessor.PROCESSOR_NAME)
@@ -78,7 +84,6 @@ public class AttributeMerger implements ModelMerger {
                 continue;
             }
 
-            IProcessableElementTag mergedEvent = (IProcessableElementTag) Extensions.first(mergedModel);
             String mergedAttributeValue; // Merge th:with attributes
             if (Extensions.equalsName(sourceAttribute, standardDialectPrefix, StandardWithTagProcessor.ATTR_NAME)) {
                 mergedAttributeValue = new VariableDeclarationMerger(context).merge(sourceAttribute.getValue(),
@@ -87,9 +92,20 @@ public class AttributeMerger implements ModelMerger {
                 mergedAttributeValue = sourceAttribute.getValue();
             }
 
-            mergedModel.replace(0, context.getModelFactory().replaceAttribute(mergedEvent,
-                    sourceAttribute.getAttributeDefinition().getAttributeName(), sourceAttribute.getAttributeCompleteName(),
-                    mergedAttributeValue));
+            // Every replacement creates a new tag, so skip those that wouldn't
+            // change anything, like namespace declarations common to both
+            AttributeName attributeName = sourceAttribute.getAttributeDefinition().getAttributeName();
+            IAttribute mergedAttribute = mergedEvent.getAttribute(attributeName);
+            if (mergedAttribute != null
+                    && mergedAttribute.getAttributeCompleteName().equals(sourceAttribute.getAttributeCompleteName())
+                    && Objects.equals(mergedAttribute.getValue(), mergedAttributeValue)) {
+                continue;
+            }
+            mergedEvent = modelFactory.replaceAttribute(mergedEvent, attributeName,
+                    sourceAttribute.getAttributeCompleteName(), mergedAttributeValue);
+        }
+        if (mergedEvent != targetEvent) {
+            mergedModel.replace(0, mergedEvent);
         }
 
         return mergedModel;
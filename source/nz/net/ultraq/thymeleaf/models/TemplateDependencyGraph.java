@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+import nz.net.ultraq.thymeleaf.index.LayoutIndex;
+import org.thymeleaf.IEngineConfiguration;
+
+/**
+ * Which templates depend on which others, one graph per engine configuration.
+ * A template depends on the layout it decorates and on the templates it
+ * takes fragments from, as found by the layout dialect while processing, and
+ * as listed in the layout index if the application has one. Dependencies are
+ * only ever added, so a template that stops using another one is at worst
+ * invalidated along with it a little longer than needed.
+ *
+ * @author zhanhb
+ */
+public class TemplateDependencyGraph {
+
+    public static final String EXECUTION_ATTRIBUTE_NAME = "LayoutDialect::TemplateDependencyGraph";
+
+    /**
+     * Returns the graph registered by the layout dialect with the given
+     * configuration.
+     *
+     * @param configuration
+     * @return The graph for the configuration, or {@code null} if the layout
+     * dialect didn't register one.
+     */
+    @Nullable
+    public static TemplateDependencyGraph forConfiguration(@Nullable IEngineConfiguration configuration) {
+        if (configuration == null) {
+            return null;
+        }
+        Map<String, Object> executionAttributes = configuration.getExecutionAttributes();
+        Object graph = executionAttributes != null ? executionAttributes.get(EXECUTION_ATTRIBUTE_NAME) : null;
+        return graph instanceof TemplateDependencyGraph ? (TemplateDependencyGraph) graph : null;
+    }
+
+    // Each template to the templates that directly depend on it
+    private final ConcurrentMap<String, Set<String>> dependents = new ConcurrentHashMap<>();
+
+    public TemplateDependencyGraph() {
+    }
+
+    /**
+     * Constructor, start with the dependencies recorded in a layout index.
+     *
+     * @param layoutIndex
+     */
+    public TemplateDependencyGraph(@Nullable LayoutIndex layoutIndex) {
+        if (layoutIndex != null) {
+            for (String templateName : layoutIndex.getTemplateNames()) {
+                LayoutIndex.Entry entry = layoutIndex.getEntry(templateName);
+                addDependency(templateName, entry.getDecorateTemplate());
+                for (String referencedTemplate : entry.getReferencedTemplates()) {
+                    addDependency(templateName, referencedTemplate);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records that one template depends on another.
+     *
+     * @param templateName
+     * @param dependency Template used by {@code templateName}. Nothing is
+     * recorded if this is {@code null} or the template itself.
+     */
+    public void addDependency(String templateName, @Nullable String dependency) {
+        if (templateName == null || dependency == null || templateName.equals(dependency)) {
+            return;
+        }
+        Set<String> set = dependents.get(dependency);
+        if (set == null) {
+            Set<String> newSet = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>(4));
+            set = dependents.putIfAbsent(dependency, newSet);
+            if (set == null) {
+                set = newSet;
+            }
+        }
+        set.add(templateName);
+    }
+
+    /**
+     * Returns every template that needs the given one to be rendered: those
+     * decorating it or taking fragments from it, and those depending on them
+     * in turn.
+     *
+     * @param templateName
+     * @return Names of the templates depending on the given one, not including
+     * itself.
+     */
+    public Set<String> getDependents(String templateName) {
+        Set<String> result = new LinkedHashSet<>();
+        List<String> pending = new ArrayList<>();
+        pending.add(templateName);
+        while (!pending.isEmpty()) {
+            Set<String> set = dependents.get(pending.remove(pending.size() - 1));
+            if (set == null) {
+                continue;
+            }
+            for (String dependent : set) {
+                if (result.add(dependent)) {
+                    pending.add(dependent);
+                }
+            }
+        }
+        result.remove(templateName);
+        return result;
+    }
+
+    public void clear() {
+        dependents.clear();
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.models;
+
+import org.thymeleaf.engine.TemplateData;
+import org.thymeleaf.model.IModel;
+
+/**
+ * A fragment located by the {@link TemplateModelFinder}, along with the data
+ * of the template it came from.
+ *
+ * @author zhanhb
+ */
+public class TemplateFragment {
+
+    private final TemplateData templateData;
+    private final IModel model;
+
+    /**
+     * Constructor, set the fragment and its template.
+     *
+     * @param templateData
+     * @param model
+     */
+    public TemplateFragment(TemplateData templateData, IModel model) {
+        this.templateData = templateData;
+        this.model = model;
+    }
+
+    public TemplateData getTemplateData() {
+        return templateData;
+    }
+
+    /**
+     * Returns the fragment model. This is already a copy of the template's
+     * events, so it can be modified by the caller.
+     *
+     * @return Model of the fragment.
+     */
+    public IModel getModel() {
+        return model;
+    }
+
+}
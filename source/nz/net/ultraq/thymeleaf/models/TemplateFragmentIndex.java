@@ -0,0 +1,170 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.models;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import nz.net.ultraq.thymeleaf.fragments.FragmentProcessor;
+import nz.net.ultraq.thymeleaf.internal.Extensions;
+import nz.net.ultraq.thymeleaf.internal.IndexedModel;
+import org.thymeleaf.engine.TemplateData;
+import org.thymeleaf.engine.TemplateModel;
+import org.thymeleaf.model.IModel;
+import org.thymeleaf.model.IProcessableElementTag;
+import org.thymeleaf.model.ITemplateEvent;
+import org.thymeleaf.util.StringUtils;
+
+/**
+ * An index of every {@code layout:fragment}/{@code data-layout-fragment}
+ * definition within a template, built by walking the template once. Fragments
+ * are only copied out of the (immutable) template model when asked for.
+ *
+ * @author zhanhb
+ */
+public class TemplateFragmentIndex {
+
+    /**
+     * Returns the name a fragment definition is referenced by, which is the
+     * attribute value up to any parameter list. This matches the selector used
+     * by {@link TemplateModelFinder}, so {@code name}, {@code name(...)} and
+     * {@code name (...)} are all found by {@code name}.
+     *
+     * @param fragmentDefinition
+     * @return The name of the fragment.
+     */
+    static String fragmentNameOf(String fragmentDefinition) {
+        int parenthesis = fragmentDefinition.indexOf('(');
+        if (parenthesis == -1) {
+            return fragmentDefinition;
+        }
+        int end = parenthesis > 0 && fragmentDefinition.charAt(parenthesis - 1) == ' ' ? parenthesis - 1 : parenthesis;
+        return fragmentDefinition.substring(0, end);
+    }
+
+    private final TemplateModel templateModel;
+    private final Map<String, int[]> fragments;
+
+    /**
+     * Constructor, index the fragments of the given template.
+     *
+     * @param templateModel Model of an entire template.
+     * @param dialectPrefix Prefix configured for the layout dialect.
+     */
+    public TemplateFragmentIndex(@Nonnull TemplateModel templateModel, String dialectPrefix) {
+        this.templateModel = templateModel;
+
+        // Each entry is a list of (start, size) pairs.  Like the attoparser
+        // selector, a fragment nested within a same-named one is already part of
+        // the outer one and so isn't recorded again.
+        Map<String, int[]> map = new LinkedHashMap<>();
+        IndexedModel indexedModel = new IndexedModel(templateModel);
+        for (int i = 0, size = indexedModel.size(); i < size; i++) {
+            ITemplateEvent event = indexedModel.get(i);
+            if (!(event instanceof IProcessableElementTag)) {
+                continue;
+            }
+            String definition = ((IProcessableElementTag) event).getAttributeValue(dialectPrefix, FragmentProcessor.PROCESSOR_NAME);
+            if (StringUtils.isEmpty(definition)) {
+                continue;
+            }
+            String fragmentName = fragmentNameOf(definition);
+            int[] ranges = map.get(fragmentName);
+            if (ranges != null && i < ranges[ranges.length - 2] + ranges[ranges.length - 1]) {
+                continue;
+            }
+            int fragmentSize = Extensions.sizeOfModelAt(indexedModel, i);
+            if (ranges == null) {
+                ranges = new int[]{i, fragmentSize};
+            } else {
+                ranges = Arrays.copyOf(ranges, ranges.length + 2);
+                ranges[ranges.length - 2] = i;
+                ranges[ranges.length - 1] = fragmentSize;
+            }
+            map.put(fragmentName, ranges);
+        }
+        this.fragments = map;
+    }
+
+    /**
+     * Returns the model of the indexed template.
+     *
+     * @return Model of the entire template.
+     */
+    public TemplateModel getTemplateModel() {
+        return templateModel;
+    }
+
+    /**
+     * Returns the data of the indexed template.
+     *
+     * @return Template data.
+     */
+    public TemplateData getTemplateData() {
+        return templateModel.getTemplateData();
+    }
+
+    /**
+     * Returns the names of all the fragments defined in the template.
+     *
+     * @return Fragment names, in the order they are first defined.
+     */
+    public Set<String> getFragmentNames() {
+        return Collections.unmodifiableSet(fragments.keySet());
+    }
+
+    /**
+     * Returns whether the template defines a fragment of the given name.
+     *
+     * @param fragmentName
+     * @return {@code true} if the fragment exists in this template.
+     */
+    public boolean hasFragment(@Nullable String fragmentName) {
+        return fragments.containsKey(fragmentName);
+    }
+
+    /**
+     * Returns a new model of the named fragment, or the entire template if no
+     * name is given.
+     *
+     * @param fragmentName
+     * @return A model that can be freely modified, which is empty if the
+     * template doesn't define the fragment.
+     */
+    @Nonnull
+    public IModel getFragment(@Nullable String fragmentName) {
+        if (fragmentName == null) {
+            return templateModel.cloneModel();
+        }
+        IModel result = templateModel.getConfiguration()
+                .getModelFactory(templateModel.getTemplateMode())
+                .createModel();
+        int[] ranges = fragments.get(fragmentName);
+        if (ranges != null) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                for (int pos = ranges[i], end = pos + ranges[i + 1]; pos < end; pos++) {
+                    result.add(templateModel.get(pos));
+                }
+            }
+        }
+        return result;
+    }
+
+}
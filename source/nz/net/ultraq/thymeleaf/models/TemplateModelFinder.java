@@ -15,12 +15,22 @@
  */
 package nz.net.ultraq.thymeleaf.models;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import nz.net.ultraq.thymeleaf.LayoutDialect;
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics;
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics.Counter;
+import nz.net.ultraq.thymeleaf.index.LayoutIndex;
 import nz.net.ultraq.thymeleaf.internal.Extensions;
+import nz.net.ultraq.thymeleaf.internal.FlightRecorderEvent;
+import nz.net.ultraq.thymeleaf.internal.TemplateModelCache;
+import org.thymeleaf.IEngineConfiguration;
 import org.thymeleaf.context.ITemplateContext;
 import org.thymeleaf.engine.TemplateModel;
+import org.thymeleaf.model.IModel;
 import org.thymeleaf.standard.expression.FragmentExpression;
 import org.thymeleaf.standard.expression.IStandardExpression;
 import org.thymeleaf.util.StringUtils;
@@ -55,23 +65,68 @@ public class TemplateModelFinder {
      * @return Model for the selected template and selector.
      */
     private TemplateModel find(String templateName, String selector) {
-        return context.getConfiguration().getTemplateManager().parseStandalone(context,
+        IEngineConfiguration configuration = context.getConfiguration();
+        LayoutDialectMetrics metrics = LayoutDialectMetrics.forConfiguration(configuration);
+        Object event = FlightRecorderEvent.FIND_TEMPLATE_MODEL.begin();
+        TemplateModel model = configuration.getTemplateManager().parseStandalone(context,
                 templateName, StringUtils.isEmpty(selector) ? null : Collections.singleton(selector), context.getTemplateMode(), true, true);
+        if (event != null) {
+            FlightRecorderEvent.FIND_TEMPLATE_MODEL.commit(event, templateName, selector);
+        }
+        if (metrics.isEnabled()) {
+            TemplateModelCache cache = TemplateModelCache.forConfiguration(configuration);
+            boolean hit = cache != null && cache.seen(model);
+            metrics.templateLookup(templateName, hit);
+            if (!hit) {
+                metrics.count(context, Counter.TEMPLATES_PARSED, 1);
+            }
+        }
+        return model;
     }
 
     private TemplateModel find(String templateName) {
-        return find(templateName, null);
+        return find(templateName, null, null);
     }
 
     /**
-     * Return the model specified by the given fragment expression.
+     * Return a model for a template or a fragment within it, from Thymeleaf's
+     * template cache if it's there.
      *
-     * @param fragmentExpression
-     * @return Fragment matching the fragment specification.
+     * @param templateName
+     * @param fragmentName
+     * @param dialectPrefix
+     * @return Model for the selected template and fragment.
      */
-    public TemplateModel findFragment(FragmentExpression fragmentExpression) {
+    private TemplateModel find(String templateName, String fragmentName, String dialectPrefix) {
+        dependsOn(templateName);
+        return find(templateName, selectorFor(templateName, fragmentName, dialectPrefix));
+    }
+
+    // Records that the template being processed uses the given one
+    private void dependsOn(String templateName) {
+        TemplateDependencyGraph graph = TemplateDependencyGraph.forConfiguration(context.getConfiguration());
+        if (graph != null) {
+            graph.addDependency(context.getTemplateData().getTemplate(), templateName);
+        }
+    }
+
+    private static String selectorFor(String templateName, String fragmentName, String dialectPrefix) {
+        // Attoparser fragment selector, picks a fragment with layout:fragment="name"
+        // or starts with layout:fragment="name( or layout:fragment="name ( plus
+        // their data attribute equivalents. See the attoparser API docs for details:
+        // http://www.attoparser.org/apidocs/attoparser/2.0.0.RELEASE/org/attoparser/select/package-summary.html
+        return !StringUtils.isEmpty(templateName) && !StringUtils.isEmpty(fragmentName) ? "//["
+                + dialectPrefix + ":fragment='" + fragmentName + "' or "
+                + dialectPrefix + ":fragment^='" + fragmentName + "(' or "
+                + dialectPrefix + ":fragment^='" + fragmentName + " (' or "
+                + "data-" + dialectPrefix + "-fragment='" + fragmentName + "' or "
+                + "data-" + dialectPrefix + "-fragment^='" + fragmentName + "(' or "
+                + "data-" + dialectPrefix + "-fragment^='" + fragmentName + " ('"
+                + "]" : null;
+    }
+
+    private String templateNameOf(FragmentExpression fragmentExpression) {
         String templateName = "this";
-        String dialectPrefix = Extensions.getPrefixForDialect(context, LayoutDialect.class);
         IStandardExpression expression = fragmentExpression.getTemplateName();
         if (expression != null) {
             Object result = expression.execute(context);
@@ -82,12 +137,118 @@ public class TemplateModelFinder {
         if (Objects.equals(templateName, "this")) {
             templateName = context.getTemplateData().getTemplate();
         }
+        return templateName;
+    }
+
+    private String fragmentNameOf(FragmentExpression fragmentExpression) {
         IStandardExpression fragmentSelector = fragmentExpression.getFragmentSelector();
         Object execute = null;
         if (fragmentSelector != null) {
             execute = fragmentSelector.execute(context);
         }
-        return findFragment(templateName, execute != null ? execute.toString() : null, dialectPrefix);
+        return execute != null ? execute.toString() : null;
+    }
+
+    /**
+     * Return the model specified by the given fragment expression.
+     *
+     * @param fragmentExpression
+     * @return Fragment matching the fragment specification.
+     */
+    public TemplateModel findFragment(FragmentExpression fragmentExpression) {
+        String dialectPrefix = Extensions.getPrefixForDialect(context, LayoutDialect.class);
+        return findFragment(templateNameOf(fragmentExpression), fragmentNameOf(fragmentExpression), dialectPrefix);
+    }
+
+    /**
+     * Return the fragment specified by the given fragment expression, looking
+     * it up in the fragment index of its template so that a template is only
+     * walked once no matter how many of its fragments are used.
+     *
+     * <p>
+     * If the layout index made at build time says the template doesn't define
+     * the fragment, the template isn't indexed and the fragment is left to the
+     * selector. Nothing else is taken from the layout index, which may be out
+     * of date, so templates are still parsed when first used.
+     *
+     * @param fragmentExpression
+     * @return Fragment matching the fragment specification.
+     */
+    public TemplateFragment findTemplateFragment(FragmentExpression fragmentExpression) {
+        String dialectPrefix = Extensions.getPrefixForDialect(context, LayoutDialect.class);
+        String templateName = templateNameOf(fragmentExpression);
+        String fragmentName = fragmentNameOf(fragmentExpression);
+        if (StringUtils.isEmpty(fragmentName) || mayDefine(templateName, fragmentName)) {
+            TemplateFragmentIndex fragmentIndex = findFragments(templateName, dialectPrefix);
+            if (StringUtils.isEmpty(fragmentName) || fragmentIndex.hasFragment(fragmentName)) {
+                return new TemplateFragment(fragmentIndex.getTemplateData(),
+                        copied(fragmentIndex.getFragment(StringUtils.isEmpty(fragmentName) ? null : fragmentName)));
+            }
+        }
+
+        // Not a plain fragment name, leave it to the selector
+        TemplateModel fragment = findFragment(templateName, fragmentName, dialectPrefix);
+        return new TemplateFragment(fragment.getTemplateData(), copied(fragment.cloneModel()));
+    }
+
+    // Whether the template could define the fragment, which is unless the
+    // layout index knows the template and lists other fragments for it
+    private boolean mayDefine(String templateName, String fragmentName) {
+        LayoutIndex layoutIndex = LayoutIndex.forConfiguration(context.getConfiguration());
+        LayoutIndex.Entry entry = layoutIndex != null ? layoutIndex.getEntry(templateName) : null;
+        return entry == null || entry.getFragmentNames().contains(fragmentName);
+    }
+
+    // Counts the events copied out of a template model to make the given one
+    private IModel copied(IModel model) {
+        LayoutDialectMetrics metrics = LayoutDialectMetrics.forConfiguration(context.getConfiguration());
+        metrics.count(context, Counter.MODELS_CREATED, 1);
+        metrics.count(context, Counter.EVENTS_CLONED, model.size());
+        return model;
+    }
+
+    /**
+     * Return an index of all the fragments defined in a template.
+     *
+     * @param templateName
+     * @return Index of the fragments in the template.
+     */
+    public TemplateFragmentIndex findFragments(String templateName) {
+        return findFragments(templateName, Extensions.getPrefixForDialect(context, LayoutDialect.class));
+    }
+
+    /**
+     * Return models for several fragments of the same template, walking that
+     * template only once.
+     *
+     * @param templateName
+     * @param fragmentNames
+     * @return Map of the fragment names to their models, empty models for
+     * fragments not defined in the template.
+     */
+    public Map<String, IModel> findFragments(String templateName, Collection<String> fragmentNames) {
+        TemplateFragmentIndex fragmentIndex = findFragments(templateName);
+        Map<String, IModel> result = new LinkedHashMap<>(fragmentNames.size() * 4 / 3 + 1);
+        for (String fragmentName : fragmentNames) {
+            result.put(fragmentName, fragmentIndex.getFragment(fragmentName));
+        }
+        return result;
+    }
+
+    private TemplateFragmentIndex findFragments(String templateName, String dialectPrefix) {
+        dependsOn(templateName);
+        TemplateModel model = find(templateName, null);
+        TemplateModelCache cache = TemplateModelCache.forConfiguration(context.getConfiguration());
+        if (cache == null) {
+            return new TemplateFragmentIndex(model, dialectPrefix);
+        }
+        TemplateModelCache.Key key = new TemplateModelCache.Key(model, dialectPrefix);
+        TemplateFragmentIndex fragmentIndex = cache.getFragmentIndex(key);
+        if (fragmentIndex == null) {
+            fragmentIndex = new TemplateFragmentIndex(model, dialectPrefix);
+            cache.putFragmentIndex(key, fragmentIndex);
+        }
+        return fragmentIndex;
     }
 
     /**
@@ -99,20 +260,7 @@ public class TemplateModelFinder {
      * @return Fragment matching the fragment specification.
      */
     public TemplateModel findFragment(String templateName, String fragmentName, String dialectPrefix) {
-        return find(templateName,
-                // Attoparser fragment selector, picks a fragment with layout:fragment="name"
-                // or starts with layout:fragment="name( or layout:fragment="name ( plus
-                // their data attribute equivalents. See the attoparser API docs for details:
-                // http://www.attoparser.org/apidocs/attoparser/2.0.0.RELEASE/org/attoparser/select/package-summary.html
-                !StringUtils.isEmpty(templateName) && !StringUtils.isEmpty(fragmentName) ? "//["
-                + dialectPrefix + ":fragment='" + fragmentName + "' or "
-                + dialectPrefix + ":fragment^='" + fragmentName + "(' or "
-                + dialectPrefix + ":fragment^='" + fragmentName + " (' or "
-                + "data-" + dialectPrefix + "-fragment='" + fragmentName + "' or "
-                + "data-" + dialectPrefix + "-fragment^='" + fragmentName + "(' or "
-                + "data-" + dialectPrefix + "-fragment^='" + fragmentName + " ('"
-                + "]" : null
-        );
+        return find(templateName, fragmentName, dialectPrefix);
     }
 
     /**
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.models;
+
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+import nz.net.ultraq.thymeleaf.internal.BoundedCache;
+import org.thymeleaf.IEngineConfiguration;
+
+/**
+ * Cache of the {@code th:with} values worked on by the
+ * {@link VariableDeclarationMerger}, one per engine configuration as the
+ * declarations are parsed with the configuration's expression parser. Keeps
+ * the parsed declarations of each value, and the result of merging each pair
+ * of values.
+ *
+ * @author zhanhb
+ */
+public class VariableDeclarationCache {
+
+    public static final String EXECUTION_ATTRIBUTE_NAME = "LayoutDialect::VariableDeclarationCache";
+    public static final int DEFAULT_MAX_SIZE = 200;
+
+    /**
+     * Returns the cache registered by the layout dialect with the given
+     * configuration.
+     *
+     * @param configuration
+     * @return The cache for the configuration, or {@code null} if the layout
+     * dialect didn't register one.
+     */
+    @Nullable
+    public static VariableDeclarationCache forConfiguration(@Nullable IEngineConfiguration configuration) {
+        if (configuration == null) {
+            return null;
+        }
+        Map<String, Object> executionAttributes = configuration.getExecutionAttributes();
+        Object cache = executionAttributes != null ? executionAttributes.get(EXECUTION_ATTRIBUTE_NAME) : null;
+        return cache instanceof VariableDeclarationCache ? (VariableDeclarationCache) cache : null;
+    }
+
+    private final BoundedCache<String, List<VariableDeclaration>> declarations;
+    private final BoundedCache<Key, String> merged;
+
+    public VariableDeclarationCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public VariableDeclarationCache(int maxSize) {
+        this.declarations = new BoundedCache<>(maxSize);
+        this.merged = new BoundedCache<>(maxSize);
+    }
+
+    /**
+     * Returns the declarations previously parsed from a {@code th:with} value.
+     *
+     * @param declarationString
+     * @return The cached declarations, or {@code null} if there aren't any.
+     */
+    @Nullable
+    List<VariableDeclaration> getDeclarations(String declarationString) {
+        return declarations.get(declarationString);
+    }
+
+    void putDeclarations(String declarationString, List<VariableDeclaration> parsed) {
+        declarations.put(declarationString, parsed);
+    }
+
+    /**
+     * Returns the result of previously merging a source {@code th:with} value
+     * into a target one.
+     *
+     * @param target
+     * @param source
+     * @return The cached merged value, or {@code null} if there isn't one.
+     */
+    @Nullable
+    String getMerged(String target, String source) {
+        return merged.get(new Key(target, source));
+    }
+
+    void putMerged(String target, String source, String result) {
+        merged.put(new Key(target, source), result);
+    }
+
+    public void clear() {
+        declarations.clear();
+        merged.clear();
+    }
+
+    private static final class Key {
+
+        private final String target;
+        private final String source;
+
+        Key(String target, String source) {
+            this.target = target;
+            this.source = source;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return target.equals(other.target) && source.equals(other.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return target.hashCode() * 31 + source.hashCode();
+        }
+
+    }
+
+}
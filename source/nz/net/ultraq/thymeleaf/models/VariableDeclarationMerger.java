@@ -15,9 +15,12 @@
  */
 package nz.net.ultraq.thymeleaf.models;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import org.thymeleaf.context.IExpressionContext;
 import org.thymeleaf.util.StringUtils;
 
@@ -31,6 +34,65 @@ import org.thymeleaf.util.StringUtils;
  */
 public class VariableDeclarationMerger {
 
+    // Expression preprocessing depends on the context, so declaration strings
+    // containing any of it can't be cached
+    private static final String PREPROCESS_DELIMITER = "__";
+
+    private static boolean isCacheable(String declarationString) {
+        return !declarationString.contains(PREPROCESS_DELIMITER);
+    }
+
+    /**
+     * Merges the parsed declarations, keeping the order of those in the target
+     * followed by any new ones in the source. Each target declaration is
+     * overridden by the first unused source declaration of the same name.
+     *
+     * @param targetDeclarations
+     * @param sourceDeclarations
+     * @param capacity
+     * @return The merged {@code th:with} value.
+     */
+    private static String merge(List<VariableDeclaration> targetDeclarations,
+            List<VariableDeclaration> sourceDeclarations, int capacity) {
+        int sourceSize = sourceDeclarations.size();
+        Map<String, Deque<Integer>> sourceIndexes = new HashMap<>(sourceSize * 4 / 3 + 1);
+        for (int i = 0; i < sourceSize; i++) {
+            String name = sourceDeclarations.get(i).getName();
+            Deque<Integer> indexes = sourceIndexes.get(name);
+            if (indexes == null) {
+                indexes = new ArrayDeque<>(2);
+                sourceIndexes.put(name, indexes);
+            }
+            indexes.add(i);
+        }
+
+        StringBuilder buffer = new StringBuilder(capacity);
+        boolean[] used = new boolean[sourceSize];
+        for (VariableDeclaration targetDeclaration : targetDeclarations) {
+            Deque<Integer> indexes = sourceIndexes.get(targetDeclaration.getName());
+            Integer override = indexes != null ? indexes.poll() : null;
+            if (override != null) {
+                used[override] = true;
+                append(buffer, sourceDeclarations.get(override));
+            } else {
+                append(buffer, targetDeclaration);
+            }
+        }
+        for (int i = 0; i < sourceSize; i++) {
+            if (!used[i]) {
+                append(buffer, sourceDeclarations.get(i));
+            }
+        }
+        return buffer.toString();
+    }
+
+    private static void append(StringBuilder buffer, VariableDeclaration declaration) {
+        if (buffer.length() > 0) {
+            buffer.append(',');
+        }
+        buffer.append(declaration);
+    }
+
     private final IExpressionContext context;
 
     /**
@@ -44,7 +106,10 @@ public class VariableDeclarationMerger {
 
     /**
      * Merge {@code th:with} attributes so that names from the source value
-     * overwrite the same names in the target value.
+     * overwrite the same names in the target value. The same attributes get
+     * merged on every render of a page, so the result for each pair of values
+     * is remembered in the {@link VariableDeclarationCache} of the context's
+     * configuration, unless either needs preprocessing.
      *
      * @param target
      * @param source
@@ -57,42 +122,28 @@ public class VariableDeclarationMerger {
         if (StringUtils.isEmpty(source)) {
             return target;
         }
-        VariableDeclarationParser declarationParser = new VariableDeclarationParser(context);
-        List<VariableDeclaration> targetDeclarations = declarationParser.parse(target);
-        List<VariableDeclaration> sourceDeclarations = declarationParser.parse(source);
-
-        List<VariableDeclaration> newDeclarations = new ArrayList<>(targetDeclarations.size() + sourceDeclarations.size());
-        for (VariableDeclaration targetDeclaration : targetDeclarations) {
-            VariableDeclaration override = null;
-            String name = targetDeclaration.getName();
-            for (VariableDeclaration sourceDeclaration : sourceDeclarations) {
-                if (Objects.equals(name, sourceDeclaration.getName())) {
-                    override = sourceDeclaration;
-                    break;
-                }
-            }
-            if (override != null) {
-                sourceDeclarations.remove(override);
-                newDeclarations.add(override);
-            } else {
-                newDeclarations.add(targetDeclaration);
-            }
+        int capacity = source.length() + target.length();
+        VariableDeclarationCache cache = VariableDeclarationCache.forConfiguration(context.getConfiguration());
+        if (cache == null || !isCacheable(target) || !isCacheable(source)) {
+            VariableDeclarationParser declarationParser = new VariableDeclarationParser(context);
+            return merge(declarationParser.parse(target), declarationParser.parse(source), capacity);
         }
 
-        newDeclarations.addAll(sourceDeclarations);
-
-        StringBuilder buffer = new StringBuilder(source.length() + target.length());
-        boolean first = true;
+        String result = cache.getMerged(target, source);
+        if (result == null) {
+            result = merge(parse(cache, target), parse(cache, source), capacity);
+            cache.putMerged(target, source, result);
+        }
+        return result;
+    }
 
-        for (Object value : newDeclarations) {
-            if (first) {
-                first = false;
-            } else {
-                buffer.append(',');
-            }
-            buffer.append(value);
+    private List<VariableDeclaration> parse(VariableDeclarationCache cache, String declarationString) {
+        List<VariableDeclaration> declarations = cache.getDeclarations(declarationString);
+        if (declarations == null) {
+            declarations = Collections.unmodifiableList(new VariableDeclarationParser(context).parse(declarationString));
+            cache.putDeclarations(declarationString, declarations);
         }
-        return buffer.toString();
+        return declarations;
     }
 
 }
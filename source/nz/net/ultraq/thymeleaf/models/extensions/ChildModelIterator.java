@@ -16,12 +16,15 @@
 package nz.net.ultraq.thymeleaf.models.extensions;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import nz.net.ultraq.thymeleaf.internal.Extensions;
 import org.thymeleaf.model.IModel;
 
 /**
  * An iterator that works with a model's immediate children, returning each one
- * as a model of its own.
+ * as a read-only {@link ModelView} over the parent model. The parent shouldn't
+ * be modified while iterating, and the views should be copied with
+ * {@link IModel#cloneModel()} if they need to outlive any such changes.
  *
  * @author zhanhb
  * @author Emanuel Rabina
@@ -47,8 +50,12 @@ public class ChildModelIterator implements Iterator<IModel> {
      */
     @Override
     public IModel next() {
-        IModel subModel = Extensions.getModel(parent, currentIndex);
-        currentIndex += subModel.size();
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int size = Extensions.sizeOfModelAt(parent, currentIndex);
+        IModel subModel = new ModelView(parent, currentIndex, size);
+        currentIndex += size;
         return subModel;
     }
 
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.models.extensions;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import javax.annotation.Nonnull;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.exceptions.TemplateProcessingException;
+import org.thymeleaf.model.IModel;
+import org.thymeleaf.model.IModelVisitor;
+import org.thymeleaf.model.ITemplateEvent;
+import org.thymeleaf.templatemode.TemplateMode;
+
+/**
+ * A read-only view over a range of events in another model, used to walk parts
+ * of a model without copying them. A view is only valid for as long as the
+ * model it's over isn't modified, and {@link #cloneModel()} should be used to
+ * get a real model when the events need to be inserted somewhere or kept.
+ *
+ * @author zhanhb
+ */
+public class ModelView implements IModel {
+
+    private final IModel parent;
+    private final int offset;
+    private final int length;
+
+    /**
+     * Constructor, create a view of {@code length} events from {@code offset}
+     * in the given model.
+     *
+     * @param parent
+     * @param offset
+     * @param length
+     */
+    public ModelView(@Nonnull IModel parent, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > parent.size()) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", size: " + parent.size());
+        }
+        this.parent = parent;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Returns the model this is a view over.
+     *
+     * @return The underlying model.
+     */
+    public IModel getParent() {
+        return parent;
+    }
+
+    /**
+     * Returns the position in the underlying model at which this view starts.
+     *
+     * @return Offset of the first event of this view.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    @Override
+    public IEngineConfiguration getConfiguration() {
+        return parent.getConfiguration();
+    }
+
+    @Override
+    public TemplateMode getTemplateMode() {
+        return parent.getTemplateMode();
+    }
+
+    @Override
+    public int size() {
+        return length;
+    }
+
+    @Override
+    public ITemplateEvent get(int pos) {
+        if (pos < 0 || pos >= length) {
+            throw new IndexOutOfBoundsException("pos: " + pos + ", size: " + length);
+        }
+        return parent.get(offset + pos);
+    }
+
+    @Override
+    public void add(ITemplateEvent event) {
+        throw new UnsupportedOperationException("Model views are read-only");
+    }
+
+    @Override
+    public void insert(int pos, ITemplateEvent event) {
+        throw new UnsupportedOperationException("Model views are read-only");
+    }
+
+    @Override
+    public void replace(int pos, ITemplateEvent event) {
+        throw new UnsupportedOperationException("Model views are read-only");
+    }
+
+    @Override
+    public void addModel(IModel model) {
+        throw new UnsupportedOperationException("Model views are read-only");
+    }
+
+    @Override
+    public void insertModel(int pos, IModel model) {
+        throw new UnsupportedOperationException("Model views are read-only");
+    }
+
+    @Override
+    public void remove(int pos) {
+        throw new UnsupportedOperationException("Model views are read-only");
+    }
+
+    @Override
+    public void reset() {
+        throw new UnsupportedOperationException("Model views are read-only");
+    }
+
+    /**
+     * Copies the events of this view into a new model.
+     *
+     * @return A model that can be freely modified.
+     */
+    @Override
+    public IModel cloneModel() {
+        IModel result = parent.getConfiguration()
+                .getModelFactory(parent.getTemplateMode())
+                .createModel();
+        for (int i = offset, end = offset + length; i < end; i++) {
+            result.add(parent.get(i));
+        }
+        return result;
+    }
+
+    @Override
+    public void accept(IModelVisitor visitor) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            parent.get(i).accept(visitor);
+        }
+    }
+
+    @Override
+    public void write(Writer writer) throws IOException {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            parent.get(i).write(writer);
+        }
+    }
+
+    @Override
+    public String toString() {
+        try {
+            StringWriter writer = new StringWriter();
+            write(writer);
+            return writer.toString();
+        } catch (IOException ex) {
+            throw new TemplateProcessingException("Error while creating String representation of model", ex);
+        }
+    }
+
+}
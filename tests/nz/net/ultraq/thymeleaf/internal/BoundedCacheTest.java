@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.internal;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ *
+ * @author zhanhb
+ */
+public class BoundedCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        BoundedCache<String, Integer> instance = new BoundedCache<>(2);
+        instance.put("a", 1);
+        instance.put("b", 2);
+        // touch a so that b becomes the eldest entry
+        assertEquals(Integer.valueOf(1), instance.get("a"));
+        instance.put("c", 3);
+        assertEquals(2, instance.size());
+        assertNull(instance.get("b"));
+        assertEquals(Integer.valueOf(1), instance.get("a"));
+        assertEquals(Integer.valueOf(3), instance.get("c"));
+    }
+
+    @Test
+    public void testKeys() {
+        BoundedCache<String, Integer> instance = new BoundedCache<>(3);
+        instance.put("a", 1);
+        instance.put("b", 2);
+        instance.get("a");
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), new HashSet<>(instance.keys()));
+        // the keys are a copy, so removing while going through them is fine
+        for (String key : instance.keys()) {
+            instance.remove(key);
+        }
+        assertEquals(0, instance.size());
+    }
+
+    @Test
+    public void testReplace() {
+        BoundedCache<String, Integer> instance = new BoundedCache<>(2);
+        instance.put("a", 1);
+        instance.put("a", 2);
+        instance.put("b", 3);
+        assertEquals(2, instance.size());
+        assertEquals(Integer.valueOf(2), instance.get("a"));
+        assertEquals(Integer.valueOf(3), instance.get("b"));
+        assertEquals(Integer.valueOf(2), instance.remove("a"));
+        assertNull(instance.get("a"));
+        instance.put("c", 4);
+        instance.put("d", 5);
+        assertEquals(2, instance.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalSize() {
+        new BoundedCache<>(0);
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 zhanhb.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nz.net.ultraq.thymeleaf.internal;
+
+import nz.net.ultraq.thymeleaf.LayoutDialect;
+import org.junit.Test;
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.dialect.IProcessorDialect;
+import org.thymeleaf.standard.StandardDialect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ *
+ * @author zhanhb
+ */
+public class DialectPrefixesTest {
+
+    @Test
+    public void testGetPrefix() {
+        TemplateEngine templateEngine = new TemplateEngine();
+        templateEngine.addDialect("custom", new LayoutDialect());
+        IEngineConfiguration configuration = templateEngine.getConfiguration();
+
+        DialectPrefixes instance = DialectPrefixes.forConfiguration(configuration);
+        assertNotNull(instance);
+        assertSame(instance, DialectPrefixes.forConfiguration(configuration));
+        assertEquals("custom", instance.getPrefix(configuration, LayoutDialect.class));
+        assertEquals("th", instance.getPrefix(configuration, StandardDialect.class));
+        assertNull(instance.getPrefix(configuration, UnusedDialect.class));
+        // Resolved prefixes are kept for later lookups
+        assertSame(instance.getPrefix(configuration, LayoutDialect.class), instance.getPrefix(configuration, LayoutDialect.class));
+    }
+
+    @Test
+    public void testWithoutLayoutDialect() {
+        IEngineConfiguration configuration = new TemplateEngine().getConfiguration();
+        assertNull(DialectPrefixes.forConfiguration(configuration));
+        assertEquals("th", DialectPrefixes.resolve(configuration, StandardDialect.class));
+        assertNull(DialectPrefixes.resolve(configuration, LayoutDialect.class));
+    }
+
+    private abstract static class UnusedDialect implements IProcessorDialect {
+    }
+
+}
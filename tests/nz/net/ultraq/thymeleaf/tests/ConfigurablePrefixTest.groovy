@@ -16,6 +16,7 @@
 
 package nz.net.ultraq.thymeleaf.tests
 
+import nz.net.ultraq.thymeleaf.decorators.DecorationPlanCache
 import nz.net.ultraq.thymeleaf.tests.LayoutDialect
 
 import org.junit.BeforeClass
@@ -69,4 +70,22 @@ class ConfigurablePrefixTest {
 
 		assert actualAsTokens == expectedAsTokens
 	}
+
+	/**
+	 * Rendering the same page again replays the decoration worked out the first
+	 * time, which must give the same result.
+	 */
+	@Test
+	void testRepeatedDecoration() {
+
+		def planCache = DecorationPlanCache.forConfiguration(templateEngine.configuration)
+		planCache.clear()
+
+		def first = templateEngine.process('Content', new Context())
+		assert planCache.size() == 1
+
+		def second = templateEngine.process('Content', new Context())
+		assert planCache.size() == 1
+		assert second == first
+	}
 }
@@ -0,0 +1,102 @@
+/* 
+ * Copyright 2019, zhanhb
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nz.net.ultraq.thymeleaf.tests
+
+import nz.net.ultraq.thymeleaf.internal.FlightRecorderEvent
+import nz.net.ultraq.thymeleaf.tests.LayoutDialect
+
+import org.junit.Assume
+import org.junit.Test
+import org.thymeleaf.TemplateEngine
+import org.thymeleaf.context.Context
+import org.thymeleaf.standard.StandardDialect
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver
+
+import java.nio.file.Files
+
+/**
+ * Tests that the layout dialect's flight recorder events are recorded when a
+ * recording asks for them.  The JFR API is used dynamically so that these
+ * tests compile on JVMs without it.
+ * 
+ * @author zhanhb
+ */
+class FlightRecorderEventTest {
+
+	/**
+	 * Without a recording, no events are started.
+	 */
+	@Test
+	void notRecording() {
+
+		assert FlightRecorderEvent.DECORATE.begin() == null
+		FlightRecorderEvent.DECORATE.commit(null, 'Content', 'Layout', 1, 2)
+	}
+
+	/**
+	 * Decoration, template lookup and head merging events are recorded.
+	 */
+	@Test
+	void recording() {
+
+		Assume.assumeTrue(FlightRecorderEvent.DECORATE.available)
+
+		def templateEngine = new TemplateEngine(
+			dialectsByPrefix: [
+				t: new StandardDialect(),
+				l: new LayoutDialect()
+			],
+			templateResolver: new ClassLoaderTemplateResolver(
+				prefix: 'nz/net/ultraq/thymeleaf/tests/ConfigurablePrefixTest-',
+				suffix: '.html'
+			)
+		)
+
+		def recording = Class.forName('jdk.jfr.Recording').newInstance()
+		['nz.net.ultraq.thymeleaf.Decorate', 'nz.net.ultraq.thymeleaf.FindTemplateModel', 'nz.net.ultraq.thymeleaf.MergeHead'].each { name ->
+			recording.enable(name)
+		}
+		def file = Files.createTempFile('layout-dialect', '.jfr')
+		try {
+			recording.start()
+			templateEngine.process('Content', new Context())
+			recording.stop()
+			recording.dump(file)
+
+			def events = Class.forName('jdk.jfr.consumer.RecordingFile').readAllEvents(file)
+			def decorate = events.find { event -> event.eventType.name == 'nz.net.ultraq.thymeleaf.Decorate' }
+			assert decorate
+			assert decorate.getString('contentTemplate') == 'Content'
+			assert decorate.getString('layoutTemplate') == 'Layout'
+			assert decorate.getInt('contentModelSize') > 0
+			assert decorate.getInt('layoutModelSize') > 0
+
+			assert events.any { event ->
+				event.eventType.name == 'nz.net.ultraq.thymeleaf.FindTemplateModel' && event.getString('template') == 'Layout'
+			}
+
+			def mergeHead = events.find { event -> event.eventType.name == 'nz.net.ultraq.thymeleaf.MergeHead' }
+			assert mergeHead
+			assert mergeHead.getInt('childrenMerged') > 0
+			assert mergeHead.getString('sortingStrategy') == 'nz.net.ultraq.thymeleaf.decorators.strategies.AppendingStrategy'
+		}
+		finally {
+			recording.close()
+			Files.deleteIfExists(file)
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/* 
+ * Copyright 2019, zhanhb
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nz.net.ultraq.thymeleaf.tests
+
+import nz.net.ultraq.thymeleaf.LayoutDialect
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics
+import nz.net.ultraq.thymeleaf.decorators.strategies.AppendingStrategy
+
+import org.junit.Test
+import org.thymeleaf.TemplateEngine
+import org.thymeleaf.context.Context
+import org.thymeleaf.standard.StandardDialect
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver
+
+/**
+ * Tests that a metrics listener given to the layout dialect hears about the
+ * work it does.
+ * 
+ * @author zhanhb
+ */
+class LayoutDialectMetricsTest {
+
+	/**
+	 * Processor timings and template lookups are reported, with repeat lookups
+	 * coming from the cache.
+	 */
+	@Test
+	void metrics() {
+
+		def processors = []
+		def lookups = []
+		def metrics = new LayoutDialectMetrics() {
+			@Override
+			void processorTimed(String processorName, String templateName, long elapsedNanos) {
+				assert elapsedNanos >= 0
+				processors << "${processorName}:${templateName}".toString()
+			}
+			@Override
+			void templateLookup(String templateName, boolean hit) {
+				lookups << hit
+			}
+		}
+		def templateEngine = new TemplateEngine(
+			dialectsByPrefix: [
+				t: new StandardDialect(),
+				l: new LayoutDialect(new AppendingStrategy(), true, metrics)
+			],
+			templateResolver: new ClassLoaderTemplateResolver(
+				prefix: 'nz/net/ultraq/thymeleaf/tests/ConfigurablePrefixTest-',
+				suffix: '.html'
+			)
+		)
+		assert LayoutDialectMetrics.forConfiguration(templateEngine.configuration).is(metrics)
+		assert metrics.enabled
+
+		templateEngine.process('Content', new Context())
+		assert processors.contains('decorate:Content')
+		assert processors.count { it.startsWith('fragment:') } == 2
+		assert !lookups.isEmpty()
+		assert !lookups.contains(true)
+
+		processors.clear()
+		lookups.clear()
+		templateEngine.process('Content', new Context())
+		assert processors.contains('decorate:Content')
+		assert lookups.contains(true)
+	}
+
+	/**
+	 * Without a listener, the dialect falls back to one that does nothing.
+	 */
+	@Test
+	void noMetrics() {
+
+		def templateEngine = new TemplateEngine(
+			additionalDialects: [new LayoutDialect()]
+		)
+		assert LayoutDialectMetrics.forConfiguration(templateEngine.configuration).is(LayoutDialectMetrics.NONE)
+		assert LayoutDialectMetrics.forConfiguration(new TemplateEngine().configuration).is(LayoutDialectMetrics.NONE)
+		assert !LayoutDialectMetrics.NONE.enabled
+		assert LayoutDialectMetrics.NONE.startTiming() == 0
+	}
+}
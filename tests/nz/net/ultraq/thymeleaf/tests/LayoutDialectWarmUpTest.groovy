@@ -0,0 +1,167 @@
+/* 
+ * Copyright 2019, zhanhb
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nz.net.ultraq.thymeleaf.tests
+
+import nz.net.ultraq.thymeleaf.LayoutDialect
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics
+import nz.net.ultraq.thymeleaf.decorators.strategies.AppendingStrategy
+
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.thymeleaf.TemplateEngine
+import org.thymeleaf.context.Context
+import org.thymeleaf.exceptions.TemplateProcessingException
+import org.thymeleaf.standard.StandardDialect
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver
+import org.thymeleaf.templateresolver.FileTemplateResolver
+
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+
+/**
+ * Tests for warming up templates ahead of their first use.
+ * 
+ * @author zhanhb
+ */
+class LayoutDialectWarmUpTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+	private static TemplateEngine templateEngine(LayoutDialectMetrics metrics) {
+
+		return new TemplateEngine(
+			dialectsByPrefix: [
+				t: new StandardDialect(),
+				l: new LayoutDialect(new AppendingStrategy(), true, metrics)
+			],
+			templateResolver: new ClassLoaderTemplateResolver(
+				prefix: 'nz/net/ultraq/thymeleaf/tests/ConfigurablePrefixTest-',
+				suffix: '.html'
+			)
+		)
+	}
+
+	/**
+	 * After warming up, rendering a template finds its layout in the cache.
+	 */
+	@Test
+	void warmUp() {
+
+		def lookups = []
+		def templateEngine = templateEngine(new LayoutDialectMetrics() {
+			@Override
+			void templateLookup(String templateName, boolean hit) {
+				lookups << hit
+			}
+		})
+		def executor = Executors.newFixedThreadPool(2)
+		try {
+			assert LayoutDialect.warmUp(templateEngine, ['Content', 'Layout'], executor) == 2
+		}
+		finally {
+			executor.shutdown()
+		}
+		assert !lookups.isEmpty()
+
+		lookups.clear()
+		templateEngine.process('Content', new Context())
+		assert !lookups.isEmpty()
+		assert !lookups.contains(false)
+	}
+
+	/**
+	 * Templates that can't be rendered, or can't be handed to the executor,
+	 * don't stop the others from being warmed up.
+	 */
+	@Test
+	void warmUpFailures() {
+
+		def templateEngine = templateEngine(LayoutDialectMetrics.NONE)
+		def sameThread = { Runnable task -> task.run() } as Executor
+		assert LayoutDialect.warmUp(templateEngine, ['Content', 'Missing'], sameThread) == 1
+
+		def rejecting = { Runnable task -> throw new RejectedExecutionException() } as Executor
+		assert LayoutDialect.warmUp(templateEngine, ['Content'], rejecting) == 0
+	}
+
+	/**
+	 * Warming up follows the layout and fragment references of a template
+	 * without running any of its expressions, so that rendering it afterwards
+	 * finds all of them in the cache.
+	 */
+	@Test
+	void warmUpWithoutRendering() {
+
+		def templateDirectory = temporaryFolder.root
+		new File(templateDirectory, 'Content.html').text = '''<!DOCTYPE html>
+<html layout:decorate="~{Layout}">
+<body>
+	<section layout:fragment="content" th:text="${1 / zero}">CONTENT</section>
+</body>
+</html>'''
+		new File(templateDirectory, 'Layout.html').text = '''<!DOCTYPE html>
+<html>
+<body>
+	<p layout:replace="~{Nav :: nav}">nav</p>
+	<section layout:fragment="content"></section>
+</body>
+</html>'''
+		new File(templateDirectory, 'Nav.html').text = '<nav layout:fragment="nav">NAV</nav>'
+
+		def lookups = [:]
+		def templateEngine = new TemplateEngine(
+			additionalDialects: [
+				new LayoutDialect(new AppendingStrategy(), true, new LayoutDialectMetrics() {
+					@Override
+					void templateLookup(String templateName, boolean hit) {
+						lookups[templateName] = (lookups[templateName] ?: []) << hit
+					}
+				})
+			],
+			templateResolver: new FileTemplateResolver(
+				prefix: templateDirectory.absolutePath + '/',
+				suffix: '.html'
+			)
+		)
+		def sameThread = { Runnable task -> task.run() } as Executor
+		assert LayoutDialect.warmUp(templateEngine, ['Content'], sameThread) == 1
+		assert lookups.keySet() == ['Content', 'Layout', 'Nav'] as Set
+
+		// Only the lookups made from within templates are cached, not the
+		// templates being warmed up themselves
+		def templateCache = templateEngine.configuration.cacheManager.templateCache
+		def warmedKeys = new HashSet(templateCache.keySet())
+		assert warmedKeys.every { key -> key.ownerTemplate != null }
+
+		lookups.clear()
+		assert templateEngine.process('Content', new Context(Locale.ROOT, [zero: 1])).contains('NAV')
+		assert templateCache.keySet().findAll { key -> !(key in warmedKeys) }*.ownerTemplate == [null]
+		assert lookups.keySet() == ['Content', 'Layout', 'Nav'] as Set
+		assert !lookups.values().flatten().contains(false)
+
+		try {
+			templateEngine.process('Content', new Context(Locale.ROOT, [zero: 0]))
+			assert false
+		}
+		catch (TemplateProcessingException ex) {
+			// Rendering runs the expression that warming up didn't
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/* 
+ * Copyright 2019, zhanhb
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nz.net.ultraq.thymeleaf.tests
+
+import nz.net.ultraq.thymeleaf.LayoutDialect
+import nz.net.ultraq.thymeleaf.LayoutDialectMetrics.Counter
+import nz.net.ultraq.thymeleaf.LayoutProfiler
+import nz.net.ultraq.thymeleaf.decorators.strategies.AppendingStrategy
+
+import org.junit.Test
+import org.thymeleaf.TemplateEngine
+import org.thymeleaf.context.Context
+import org.thymeleaf.standard.StandardDialect
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver
+
+import java.nio.file.Files
+
+/**
+ * Tests for the per-template cost profiler.
+ * 
+ * @author zhanhb
+ */
+class LayoutProfilerTest {
+
+	private static TemplateEngine createTemplateEngine(LayoutProfiler profiler) {
+
+		return new TemplateEngine(
+			dialectsByPrefix: [
+				t: new StandardDialect(),
+				l: new LayoutDialect(new AppendingStrategy(), true, profiler)
+			],
+			templateResolver: new ClassLoaderTemplateResolver(
+				prefix: 'nz/net/ultraq/thymeleaf/tests/ConfigurablePrefixTest-',
+				suffix: '.html'
+			)
+		)
+	}
+
+	/**
+	 * Costs are counted against the content and layout templates.
+	 */
+	@Test
+	void snapshot() {
+
+		def profiler = new LayoutProfiler()
+		def templateEngine = createTemplateEngine(profiler)
+		templateEngine.process('Content', new Context())
+
+		def profiles = profiler.snapshot().collectEntries { profile -> [(profile.templateName): profile] }
+		def content = profiles['Content']
+		assert content.processorInvocations > 0
+		assert content.processorNanos > 0
+		assert content.getCount(Counter.EVENTS_CLONED) > 0
+		assert content.getCount(Counter.TEMPLATES_PARSED) == 2
+		assert content.getCount(Counter.HEAD_CHILDREN_MERGED) > 0
+		assert content.getCount(Counter.FRAGMENTS_FOUND) == 2
+
+		def layout = profiles['Layout']
+		assert layout.getCount(Counter.EVENTS_CLONED) > 0
+		assert layout.getCount(Counter.MODELS_CREATED) == 1
+		assert layout.lookupMisses == 1
+
+		profiler.reset()
+		assert profiler.snapshot().empty
+
+		// Templates served from Thymeleaf's template cache weren't parsed
+		templateEngine.process('Content', new Context())
+		content = profiler.snapshot().find { profile -> profile.templateName == 'Content' }
+		assert content.getCount(Counter.TEMPLATES_PARSED) == 0
+		assert content.lookupHits == 1
+		assert content.lookupMisses == 0
+	}
+
+	/**
+	 * The report has a heading line and a line for each template.
+	 */
+	@Test
+	void dump() {
+
+		def profiler = new LayoutProfiler()
+		createTemplateEngine(profiler).process('Content', new Context())
+
+		def file = Files.createTempFile('layout-profile', '.tsv').toFile()
+		try {
+			profiler.dump(file)
+			def lines = file.readLines('UTF-8')
+			assert lines[0].startsWith('template\tinvocations\ttime-ms\tevents-cloned\t')
+			assert lines.size() == profiler.snapshot().size() + 1
+			assert lines.any { line -> line.startsWith('Content\t') }
+		}
+		finally {
+			file.delete()
+		}
+	}
+
+	/**
+	 * Sampled measurements are scaled up by the sample interval, so the totals
+	 * estimate the real ones.
+	 */
+	@Test
+	void sampling() {
+
+		def profiler = new LayoutProfiler(4)
+		10000.times {
+			profiler.counted('Content', Counter.FRAGMENTS_FOUND, 1)
+		}
+		def count = profiler.snapshot()[0].getCount(Counter.FRAGMENTS_FOUND)
+		assert count % 4 == 0
+		assert count > 8000 && count < 12000
+	}
+
+	@Test(expected = IllegalArgumentException)
+	void illegalSampleInterval() {
+
+		new LayoutProfiler(0)
+	}
+}
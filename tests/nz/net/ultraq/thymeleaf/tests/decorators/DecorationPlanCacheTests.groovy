@@ -0,0 +1,108 @@
+/* 
+ * Copyright 2019, zhanhb
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nz.net.ultraq.thymeleaf.tests.decorators
+
+import nz.net.ultraq.thymeleaf.LayoutDialect
+
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.thymeleaf.TemplateEngine
+import org.thymeleaf.context.Context
+import org.thymeleaf.templateresolver.FileTemplateResolver
+
+/**
+ * Tests that decorations replayed from the decoration plan cache give the same
+ * result as decorating the page again.
+ * 
+ * @author zhanhb
+ */
+class DecorationPlanCacheTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+	private TemplateEngine templateEngine
+
+	private void writeTemplate(String name, String text) {
+		new File(temporaryFolder.root, "${name}.html").text = text
+	}
+
+	private void writePage(String name, String meta) {
+		writeTemplate(name, """<!DOCTYPE html>
+<html layout:decorate="~{Middle}">
+<head>
+	<meta name="page" content="${meta}"/>
+</head>
+<body>
+	<section layout:fragment="content">CONTENT</section>
+</body>
+</html>""")
+	}
+
+	@Before
+	void setup() {
+
+		writePage('PageOne', 'one')
+		writePage('PageTwo', 'two')
+		writeTemplate('Middle', '''<!DOCTYPE html>
+<html layout:decorate="~{Base}">
+<head>
+	<meta name="middle" content="middle"/>
+</head>
+<body>
+	<section layout:fragment="content"></section>
+</body>
+</html>''')
+		writeTemplate('Base', '''<!DOCTYPE html>
+<html>
+<head>
+	<meta name="base" content="base"/>
+</head>
+<body>
+	<section layout:fragment="content"></section>
+</body>
+</html>''')
+		templateEngine = new TemplateEngine(
+			additionalDialects: [new LayoutDialect()],
+			templateResolver: new FileTemplateResolver(
+				prefix: temporaryFolder.root.absolutePath + '/',
+				suffix: '.html'
+			)
+		)
+	}
+
+	/**
+	 * Pages decorated by the same chain of layouts, whose models are the same
+	 * size by the time they reach the outermost layout, each keep their own
+	 * content.
+	 */
+	@Test
+	void decorateChainKeepsPageContent() {
+
+		def pageOne = templateEngine.process('PageOne', new Context())
+		def pageTwo = templateEngine.process('PageTwo', new Context())
+
+		assert pageOne.contains('content="one"')
+		assert !pageOne.contains('content="two"')
+		assert pageTwo.contains('content="two"')
+		assert !pageTwo.contains('content="one"')
+		assert templateEngine.process('PageOne', new Context()) == pageOne
+		assert templateEngine.process('PageTwo', new Context()) == pageTwo
+	}
+}
@@ -0,0 +1,87 @@
+/* 
+ * Copyright 2019, zhanhb
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nz.net.ultraq.thymeleaf.tests.decorators
+
+import nz.net.ultraq.thymeleaf.LayoutDialect
+import nz.net.ultraq.thymeleaf.decorators.TitlePatternCache
+
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.thymeleaf.TemplateEngine
+import org.thymeleaf.context.Context
+import org.thymeleaf.templateresolver.FileTemplateResolver
+
+/**
+ * Tests that title patterns are remembered by each template engine
+ * separately.
+ * 
+ * @author zhanhb
+ */
+class TitlePatternCacheTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+	private TemplateEngine createTemplateEngine() {
+		return new TemplateEngine(
+			additionalDialects: [new LayoutDialect()],
+			templateResolver: new FileTemplateResolver(
+				prefix: temporaryFolder.root.absolutePath + '/',
+				suffix: '.html'
+			)
+		)
+	}
+
+	@Before
+	void setup() {
+
+		new File(temporaryFolder.root, 'Content.html').text = '''<!DOCTYPE html>
+<html layout:decorate="~{Layout}">
+<head>
+	<title>Content</title>
+</head>
+</html>'''
+		new File(temporaryFolder.root, 'Layout.html').text = '''<!DOCTYPE html>
+<html>
+<head>
+	<title layout:title-pattern="$LAYOUT_TITLE - $CONTENT_TITLE">Layout</title>
+</head>
+</html>'''
+	}
+
+	/**
+	 * Each template engine gets its own cache, which only the engine rendering
+	 * a title pattern adds it to.
+	 */
+	@Test
+	void cachePerConfiguration() {
+
+		def templateEngine = createTemplateEngine()
+		def otherTemplateEngine = createTemplateEngine()
+		def cache = TitlePatternCache.forConfiguration(templateEngine.configuration)
+		def otherCache = TitlePatternCache.forConfiguration(otherTemplateEngine.configuration)
+		assert cache != null
+		assert !cache.is(otherCache)
+		assert TitlePatternCache.forConfiguration(new TemplateEngine().configuration) == null
+
+		assert templateEngine.process('Content', new Context()).contains('<title>Layout - Content</title>')
+		assert cache.size() == 1
+		assert otherCache.size() == 0
+	}
+}
@@ -0,0 +1,158 @@
+/* 
+ * Copyright 2019 zhanhb.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nz.net.ultraq.thymeleaf.tests.decorators.strategies
+
+import nz.net.ultraq.thymeleaf.decorators.BatchSortingStrategy
+import nz.net.ultraq.thymeleaf.decorators.strategies.AppendingRespectLayoutTitleStrategy
+import nz.net.ultraq.thymeleaf.decorators.strategies.AppendingStrategy
+import nz.net.ultraq.thymeleaf.decorators.strategies.GroupingRespectLayoutTitleStrategy
+import nz.net.ultraq.thymeleaf.decorators.strategies.GroupingStrategy
+import nz.net.ultraq.thymeleaf.internal.Extensions
+import nz.net.ultraq.thymeleaf.models.ModelBuilder
+import nz.net.ultraq.thymeleaf.tests.LayoutDialect
+
+import org.junit.BeforeClass
+import org.junit.Test
+import org.thymeleaf.TemplateEngine
+import org.thymeleaf.model.IModel
+import org.thymeleaf.model.IModelFactory
+import org.thymeleaf.templatemode.TemplateMode
+
+/**
+ * Tests that merging a whole {@code <head>} at once with a
+ * {@link BatchSortingStrategy} gives the same result as placing each child in
+ * turn.
+ * 
+ * @author zhanhb
+ */
+@SuppressWarnings('deprecation')
+class BatchSortingStrategyTests {
+
+	private static IModelFactory modelFactory
+	private static ModelBuilder modelBuilder
+
+	/**
+	 * Set up, create a template engine.
+	 */
+	@BeforeClass
+	static void setupThymeleafEngine() {
+
+		def templateEngine = new TemplateEngine(
+			additionalDialects: [
+				new LayoutDialect()
+			]
+		)
+		modelFactory = templateEngine.configuration.getModelFactory(TemplateMode.HTML)
+		modelBuilder = new ModelBuilder(modelFactory, templateEngine.configuration.elementDefinitions, TemplateMode.HTML)
+	}
+
+	private static IModel whitespace() {
+
+		return modelFactory.createModel(modelFactory.createText('\n\t'))
+	}
+
+	private static List<IModel> sourceChildModels() {
+
+		return [
+			whitespace(),
+			modelBuilder.build { meta(name: 'description', content: 'Test', void: true) },
+			whitespace(),
+			modelBuilder.build { script(src: 'content.js') },
+			modelBuilder.build { link(rel: 'stylesheet', href: 'content.css', void: true) },
+			modelFactory.createModel(modelFactory.createComment(' content comment ')),
+			modelBuilder.build { style('p { color: red; }') },
+			modelBuilder.build { base(href: '/', void: true) },
+			modelBuilder.build { script(src: 'content2.js') }
+		]
+	}
+
+	private static void assertSameResult(BatchSortingStrategy strategy, IModel headModel) {
+
+		def childModels = sourceChildModels()
+
+		def expected = headModel.cloneModel()
+		childModels.each { childModel ->
+			Extensions.insertModelWithWhitespace(expected, strategy.findPositionForModel(expected, childModel), childModel, modelFactory)
+		}
+
+		def result = modelFactory.createModel()
+		result.add(headModel.first())
+		strategy.mergeModels(headModel, childModels).each { childModel ->
+			result.addModel(childModel)
+		}
+		result.add(headModel.last())
+
+		assert result.toString() == expected.toString()
+	}
+
+	private static void assertSameResult(IModel headModel) {
+
+		[
+			new AppendingStrategy(),
+			new AppendingRespectLayoutTitleStrategy(),
+			new GroupingStrategy(),
+			new GroupingRespectLayoutTitleStrategy()
+		].each { strategy ->
+			assertSameResult(strategy, headModel)
+		}
+	}
+
+	/**
+	 * Test merging into a head laid out with whitespace.
+	 */
+	@Test
+	void headWithWhitespace() {
+
+		assertSameResult(modelBuilder.build {
+			head {
+				add(whitespace())
+				meta(charset: 'utf-8', void: true)
+				add(whitespace())
+				script(src: 'layout.js')
+				add(whitespace())
+				link(rel: 'stylesheet', href: 'layout.css', void: true)
+				add(whitespace())
+			}
+		})
+	}
+
+	/**
+	 * Test merging into a head without any whitespace, ending in an element made
+	 * up of several events.
+	 */
+	@Test
+	void headWithoutWhitespace() {
+
+		assertSameResult(modelBuilder.build {
+			head {
+				meta(charset: 'utf-8', void: true)
+				style('body { margin: 0; }')
+			}
+		})
+	}
+
+	/**
+	 * Test merging into an empty head.
+	 */
+	@Test
+	void emptyHead() {
+
+		assertSameResult(modelBuilder.build {
+			head()
+		})
+	}
+}
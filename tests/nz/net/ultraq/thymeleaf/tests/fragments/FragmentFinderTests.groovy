@@ -19,6 +19,7 @@ package nz.net.ultraq.thymeleaf.tests.fragments
 import nz.net.ultraq.thymeleaf.tests.LayoutDialect
 import nz.net.ultraq.thymeleaf.fragments.FragmentFinder
 import nz.net.ultraq.thymeleaf.models.ModelBuilder
+import nz.net.ultraq.thymeleaf.models.extensions.ModelView
 
 import org.junit.BeforeClass
 import org.junit.Test
@@ -74,4 +75,51 @@ class FragmentFinderTests {
 		assert fragments.containsKey('paragraph-fragment')
 		assert fragments.containsKey('footer-fragment')
 	}
+
+	/**
+	 * Test that found fragments are unaffected by later changes to the model
+	 * they were found in.
+	 */
+	@Test
+	void fragmentsOutliveModelChanges() {
+
+		def source = modelBuilder.build {
+			main {
+				header('layout:fragment': 'header-fragment') {
+					p('Header')
+				}
+			}
+		}
+		def expected = source.getModel(1)
+
+		def fragments = new FragmentFinder('layout').findFragments(source)
+		source.removeChildren()
+
+		def fragment = fragments['header-fragment'][0]
+		assert fragment.equalsIgnoreWhitespace(expected)
+		assert fragment.cloneModel().equalsIgnoreWhitespace(expected)
+	}
+
+	/**
+	 * Test that fragments found in a read-only view are views over the same
+	 * events, and not copies.
+	 */
+	@Test
+	void fragmentsOfViewsAreViews() {
+
+		def source = modelBuilder.build {
+			main {
+				header('layout:fragment': 'header-fragment') {
+					p('Header')
+				}
+			}
+		}
+
+		def fragments = new FragmentFinder('layout').findFragments(new ModelView(source, 0, source.size()))
+
+		def fragment = fragments['header-fragment'][0]
+		assert fragment instanceof ModelView
+		assert fragment.parent.is(source)
+		assert fragment.get(0).is(source.get(1))
+	}
 }
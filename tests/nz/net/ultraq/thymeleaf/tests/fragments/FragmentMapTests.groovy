@@ -22,6 +22,7 @@ import org.junit.Before
 import org.junit.Test
 import org.thymeleaf.context.Context
 import org.thymeleaf.context.IContext
+import org.thymeleaf.model.IModel
 import org.thymeleaf.processor.element.IElementModelStructureHandler
 import static org.mockito.Mockito.mock
 
@@ -66,4 +67,32 @@ class FragmentMapTests {
 		def differentMap = FragmentMap.get(context)
 		assert !newMap.is(differentMap)
 	}
+
+	/**
+	 * Test that fragments set for a node come before those of the enclosing
+	 * scope, without changing what the enclosing scope sees.
+	 */
+	@Test
+	void layeredFragments() {
+
+		def structureHandler = [
+			setLocalVariable: { String name, Object value ->
+				context.setVariable(name, value)
+			}
+		] as IElementModelStructureHandler
+		def outerFragment = mock(IModel)
+		def innerFragment = mock(IModel)
+		def otherFragment = mock(IModel)
+
+		FragmentMap.setForNode(context, structureHandler, [content: [outerFragment], other: [otherFragment]])
+		def outerMap = FragmentMap.get(context)
+		FragmentMap.setForNode(context, structureHandler, [content: [innerFragment]])
+		def innerMap = FragmentMap.get(context)
+
+		assert innerMap.get('content') == [innerFragment, outerFragment]
+		assert innerMap.get('other') == [otherFragment]
+		assert innerMap.get('missing') == null
+		assert innerMap.keySet() == ['content', 'other'] as Set
+		assert outerMap.get('content') == [outerFragment]
+	}
 }
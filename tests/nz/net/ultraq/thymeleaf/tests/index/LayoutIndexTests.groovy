@@ -0,0 +1,218 @@
+/* 
+ * Copyright 2019, zhanhb
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nz.net.ultraq.thymeleaf.tests.index
+
+import nz.net.ultraq.thymeleaf.LayoutDialect
+import nz.net.ultraq.thymeleaf.index.LayoutIndex
+import nz.net.ultraq.thymeleaf.index.LayoutIndexScanner
+import nz.net.ultraq.thymeleaf.internal.TemplateModelCache
+
+import org.junit.Test
+import org.thymeleaf.TemplateEngine
+import org.thymeleaf.context.Context
+import org.thymeleaf.templateresolver.FileTemplateResolver
+
+import java.nio.file.Files
+
+/**
+ * Tests for building, saving and loading layout indexes.
+ * 
+ * @author zhanhb
+ */
+class LayoutIndexTests {
+
+	private final LayoutIndexScanner scanner = new LayoutIndexScanner()
+
+	/**
+	 * Only template names written as literals are recorded.
+	 */
+	@Test
+	void literalTemplateNames() {
+
+		assert LayoutIndexScanner.literalTemplateName('~{layouts/main}', 'page') == 'layouts/main'
+		assert LayoutIndexScanner.literalTemplateName('layouts/main', 'page') == 'layouts/main'
+		assert LayoutIndexScanner.literalTemplateName('~{layouts/main(title=${title})}', 'page') == 'layouts/main'
+		assert LayoutIndexScanner.literalTemplateName('~{fragments/header :: nav}', 'page') == 'fragments/header'
+		assert LayoutIndexScanner.literalTemplateName('fragments/header :: nav', 'page') == 'fragments/header'
+		assert LayoutIndexScanner.literalTemplateName('~{:: nav}', 'page') == 'page'
+		assert LayoutIndexScanner.literalTemplateName('~{this :: nav}', 'page') == 'page'
+		assert LayoutIndexScanner.literalTemplateName('~{${layout}}', 'page') == null
+		assert LayoutIndexScanner.literalTemplateName('${layout}', 'page') == null
+		assert LayoutIndexScanner.literalTemplateName('~{layouts/__${theme}__}', 'page') == null
+	}
+
+	/**
+	 * Layout dialect attributes in either form are picked up from a template.
+	 */
+	@Test
+	void scanTemplate() {
+
+		def entry = scanner.scan('Content', new StringReader('''<!DOCTYPE html>
+<html layout:decorate="~{Layout}">
+<body>
+	<div layout:insert="~{fragments/header :: nav}"></div>
+	<div data-layout-replace="~{${dynamic}}"></div>
+	<section layout:fragment="content"></section>
+	<p data-layout-fragment="footer(year)"/>
+</body>
+</html>'''))
+
+		assert entry.templateName == 'Content'
+		assert entry.decorateTemplate == 'Layout'
+		assert entry.referencedTemplates == ['fragments/header'] as Set
+		assert entry.fragmentNames == ['content', 'footer'] as Set
+	}
+
+	/**
+	 * Templates found in a directory, and what can be worked out from them.
+	 */
+	@Test
+	void scanDirectory() {
+
+		def directory = Files.createTempDirectory('layout-index').toFile()
+		try {
+			new File(directory, 'layouts').mkdir()
+			new File(directory, 'fragments').mkdir()
+			new File(directory, 'Content.html').text = '<html layout:decorate="~{layouts/child}"><body><div layout:replace="fragments/footer"></div></body></html>'
+			new File(directory, 'layouts/child.html').text = '<html layout:decorate="~{layouts/base}"><body></body></html>'
+			new File(directory, 'layouts/base.html').text = '<html><body><div layout:fragment="content"></div></body></html>'
+			new File(directory, 'fragments/footer.html').text = '<footer layout:insert="~{fragments/links}"></footer>'
+			new File(directory, 'notes.txt').text = 'Not a template'
+
+			def index = scanner.scan(directory)
+			assert index.templateNames == ['Content', 'fragments/footer', 'layouts/base', 'layouts/child'] as Set
+			assert index.getDecorationChain('Content') == ['layouts/child', 'layouts/base']
+			assert index.getDependencies('Content') == ['layouts/child', 'fragments/footer', 'fragments/links', 'layouts/base'] as Set
+			assert index.getEntry('layouts/base').fragmentNames == ['content'] as Set
+		}
+		finally {
+			directory.deleteDir()
+		}
+	}
+
+	/**
+	 * An index reads back the same as it was written.
+	 */
+	@Test
+	void writeAndRead() {
+
+		def index = new LayoutIndex([
+			new LayoutIndex.Entry('Content', 'Layout', ['fragments/header'], ['content']),
+			new LayoutIndex.Entry('Layout', null, [], ['content', 'footer'])
+		])
+		def writer = new StringWriter()
+		index.write(writer)
+
+		def read = LayoutIndex.read(new StringReader(writer.toString()))
+		assert read.templateNames == index.templateNames
+		assert read.getEntry('Content').decorateTemplate == 'Layout'
+		assert read.getEntry('Content').referencedTemplates == ['fragments/header'] as Set
+		assert read.getEntry('Layout').decorateTemplate == null
+		assert read.getEntry('Layout').fragmentNames == ['content', 'footer'] as Set
+	}
+
+	/**
+	 * Decoration chains that loop back on themselves end at the repeat.
+	 */
+	@Test
+	void decorationChainCycle() {
+
+		def index = new LayoutIndex([
+			new LayoutIndex.Entry('a', 'b', [], []),
+			new LayoutIndex.Entry('b', 'a', [], [])
+		])
+		assert index.getDecorationChain('a') == ['b']
+	}
+
+	@Test(expected = IOException)
+	void readBadIndex() {
+
+		LayoutIndex.read(new StringReader('decorate\tLayout\n'))
+	}
+
+	/**
+	 * The layout dialect loads the index from the class path when added to an
+	 * engine.
+	 */
+	@Test
+	void loadedByDialect() {
+
+		assert LayoutIndex.forConfiguration(new TemplateEngine(additionalDialects: [new LayoutDialect()]).configuration) == null
+
+		def directory = Files.createTempDirectory('layout-index').toFile()
+		def thread = Thread.currentThread()
+		def originalClassLoader = thread.contextClassLoader
+		try {
+			def indexFile = new File(directory, LayoutIndex.DEFAULT_RESOURCE)
+			indexFile.parentFile.mkdirs()
+			indexFile.withWriter('UTF-8') { writer ->
+				new LayoutIndex([new LayoutIndex.Entry('Content', 'Layout', [], [])]).write(writer)
+			}
+			thread.contextClassLoader = new URLClassLoader([directory.toURI().toURL()] as URL[], originalClassLoader)
+
+			def templateEngine = new TemplateEngine(additionalDialects: [new LayoutDialect()])
+			def index = LayoutIndex.forConfiguration(templateEngine.configuration)
+			assert index != null
+			assert index.getDecorationChain('Content') == ['Layout']
+		}
+		finally {
+			thread.contextClassLoader = originalClassLoader
+			directory.deleteDir()
+		}
+	}
+
+	/**
+	 * Fragments the index says a template doesn't define are left to the
+	 * selector, without indexing the fragments of the template, and are still
+	 * found if the index is out of date.
+	 */
+	@Test
+	void fragmentLookupUsesIndex() {
+
+		def directory = Files.createTempDirectory('layout-index').toFile()
+		def thread = Thread.currentThread()
+		def originalClassLoader = thread.contextClassLoader
+		try {
+			new File(directory, 'Content.html').text = '<div layout:insert="~{Nav :: nav}">nav</div>'
+			new File(directory, 'Nav.html').text = '<nav layout:fragment="nav">NAV</nav>'
+			def render = { List<String> navFragments ->
+				def indexFile = new File(directory, LayoutIndex.DEFAULT_RESOURCE)
+				indexFile.parentFile.mkdirs()
+				indexFile.withWriter('UTF-8') { writer ->
+					new LayoutIndex([new LayoutIndex.Entry('Nav', null, [], navFragments)]).write(writer)
+				}
+				thread.contextClassLoader = new URLClassLoader([directory.toURI().toURL()] as URL[], originalClassLoader)
+				def templateEngine = new TemplateEngine(
+					additionalDialects: [new LayoutDialect()],
+					templateResolver: new FileTemplateResolver(
+						prefix: directory.absolutePath + '/',
+						suffix: '.html'
+					)
+				)
+				assert templateEngine.process('Content', new Context()).contains('NAV')
+				return TemplateModelCache.forConfiguration(templateEngine.configuration).size()
+			}
+
+			assert render(['nav']) == 1
+			assert render(['other']) == 0
+		}
+		finally {
+			thread.contextClassLoader = originalClassLoader
+			directory.deleteDir()
+		}
+	}
+}
@@ -171,4 +171,24 @@ class AttributeMergerTests {
 		def result = attributeMerger.merge(target, source)
 		assert result == expected
 	}
+
+	/**
+	 * Test that attributes already the same in the target are left as they are,
+	 * keeping the target element when nothing would change.
+	 */
+	@Test
+	@SuppressWarnings('ExplicitCallToDivMethod')
+	void sameAttributes() {
+
+		def source = modelBuilder.build {
+			div(class: 'container', id: 'test-element')
+		}
+		def target = modelBuilder.build {
+			div(id: 'test-element', class: 'container', title: 'Title')
+		}
+
+		def result = attributeMerger.merge(target, source)
+		assert result == target
+		assert result.get(0).is(target.get(0))
+	}
 }
@@ -0,0 +1,109 @@
+/* 
+ * Copyright 2019, zhanhb
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nz.net.ultraq.thymeleaf.tests.models
+
+import nz.net.ultraq.thymeleaf.LayoutDialect
+import nz.net.ultraq.thymeleaf.decorators.DecorationPlanCache
+import nz.net.ultraq.thymeleaf.index.LayoutIndex
+import nz.net.ultraq.thymeleaf.models.TemplateDependencyGraph
+
+import org.junit.Test
+import org.thymeleaf.TemplateEngine
+import org.thymeleaf.context.Context
+import org.thymeleaf.standard.StandardDialect
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver
+
+/**
+ * Tests for the template dependency graph and invalidating templates through
+ * it.
+ * 
+ * @author zhanhb
+ */
+class TemplateDependencyGraphTests {
+
+	/**
+	 * Dependents are found transitively, without the template itself even when
+	 * the dependencies go round in a circle.
+	 */
+	@Test
+	void dependents() {
+
+		def graph = new TemplateDependencyGraph()
+		graph.addDependency('content', 'layout')
+		graph.addDependency('layout', 'nav')
+		graph.addDependency('sidebar', 'nav')
+		graph.addDependency('nav', 'nav')
+		graph.addDependency('nav', null)
+
+		assert graph.getDependents('nav') == ['layout', 'content', 'sidebar'] as Set
+		assert graph.getDependents('layout') == ['content'] as Set
+		assert graph.getDependents('content').isEmpty()
+
+		graph.addDependency('layout', 'content')
+		assert graph.getDependents('content') == ['layout'] as Set
+
+		graph.clear()
+		assert graph.getDependents('nav').isEmpty()
+	}
+
+	/**
+	 * A layout index starts off the graph.
+	 */
+	@Test
+	void fromLayoutIndex() {
+
+		def graph = new TemplateDependencyGraph(new LayoutIndex([
+			new LayoutIndex.Entry('content', 'layout', [], ['content']),
+			new LayoutIndex.Entry('layout', null, ['nav'], ['content'])
+		]))
+		assert graph.getDependents('nav') == ['layout', 'content'] as Set
+	}
+
+	/**
+	 * Invalidating a layout evicts it and the templates decorating it from the
+	 * caches, leaving other templates cached.
+	 */
+	@Test
+	void invalidate() {
+
+		def templateEngine = new TemplateEngine(
+			dialectsByPrefix: [
+				t: new StandardDialect(),
+				l: new LayoutDialect()
+			],
+			templateResolver: new ClassLoaderTemplateResolver(
+				prefix: 'nz/net/ultraq/thymeleaf/tests/ConfigurablePrefixTest-',
+				suffix: '.html'
+			)
+		)
+		def configuration = templateEngine.configuration
+		def decorationPlanCache = DecorationPlanCache.forConfiguration(configuration)
+
+		def expected = templateEngine.process('Content', new Context())
+		assert decorationPlanCache.size() == 1
+		assert TemplateDependencyGraph.forConfiguration(configuration).getDependents('Layout') == ['Content'] as Set
+
+		assert LayoutDialect.invalidate(templateEngine, 'Content') == ['Content'] as Set
+		assert decorationPlanCache.size() == 0
+
+		templateEngine.process('Content', new Context())
+		assert LayoutDialect.invalidate(templateEngine, 'Layout') == ['Layout', 'Content'] as Set
+		assert decorationPlanCache.size() == 0
+
+		assert templateEngine.process('Content', new Context()) == expected
+	}
+}
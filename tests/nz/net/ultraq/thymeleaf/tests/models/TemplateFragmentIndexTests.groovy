@@ -0,0 +1,42 @@
+/* 
+ * Copyright 2019 zhanhb.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nz.net.ultraq.thymeleaf.tests.models
+
+import nz.net.ultraq.thymeleaf.models.TemplateFragmentIndex
+
+import org.junit.Test
+
+/**
+ * Tests for the template fragment index.
+ * 
+ * @author zhanhb
+ */
+class TemplateFragmentIndexTests {
+
+	/**
+	 * Test that fragment definitions are indexed by the same names the fragment
+	 * selector would find them by.
+	 */
+	@Test
+	void fragmentNameOf() {
+
+		assert TemplateFragmentIndex.fragmentNameOf('content') == 'content'
+		assert TemplateFragmentIndex.fragmentNameOf('content(a=${a})') == 'content'
+		assert TemplateFragmentIndex.fragmentNameOf('content (a=${a})') == 'content'
+		assert TemplateFragmentIndex.fragmentNameOf('content  (a)') == 'content '
+	}
+}
@@ -0,0 +1,128 @@
+/* 
+ * Copyright 2019, zhanhb
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nz.net.ultraq.thymeleaf.tests.models
+
+import nz.net.ultraq.thymeleaf.LayoutDialect
+import nz.net.ultraq.thymeleaf.decorators.DecorationPlanCache
+
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.thymeleaf.TemplateEngine
+import org.thymeleaf.context.Context
+import org.thymeleaf.templateresolver.FileTemplateResolver
+
+/**
+ * Tests that layouts and fragments located by the layout dialect follow
+ * Thymeleaf's template cache.
+ * 
+ * @author zhanhb
+ */
+class TemplateModelFinderTests {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder()
+
+	private File templateDirectory
+	private TemplateEngine templateEngine
+
+	private void writeLayout(String version) {
+		new File(templateDirectory, 'Layout.html').text = """<!DOCTYPE html>
+<html>
+<body>
+	<p layout:replace="~{Nav :: nav}">nav</p>
+	<p>LAYOUT-${version}</p>
+	<section layout:fragment="content"></section>
+</body>
+</html>"""
+	}
+
+	private void writeNav(String version) {
+		new File(templateDirectory, 'Nav.html').text = """<nav layout:fragment="nav">NAV-${version}</nav>"""
+	}
+
+	private String render() {
+		return templateEngine.process('Content', new Context())
+	}
+
+	@Before
+	void setup() {
+
+		templateDirectory = temporaryFolder.root
+		new File(templateDirectory, 'Content.html').text = '''<!DOCTYPE html>
+<html layout:decorate="~{Layout}">
+<body>
+	<section layout:fragment="content">CONTENT</section>
+</body>
+</html>'''
+		writeLayout('V1')
+		writeNav('V1')
+		templateEngine = new TemplateEngine(
+			additionalDialects: [new LayoutDialect()],
+			templateResolver: new FileTemplateResolver(
+				prefix: templateDirectory.absolutePath + '/',
+				suffix: '.html'
+			)
+		)
+	}
+
+	/**
+	 * Clearing Thymeleaf's template cache picks up changed layouts and
+	 * fragments, with the decoration worked out for the new layout replacing
+	 * the one for the old.
+	 */
+	@Test
+	void clearTemplateCache() {
+
+		def planCache = DecorationPlanCache.forConfiguration(templateEngine.configuration)
+
+		def result = render()
+		assert result.contains('LAYOUT-V1')
+		assert result.contains('NAV-V1')
+		assert render() == result
+		assert planCache.size() == 1
+
+		writeLayout('V2')
+		writeNav('V2')
+		assert render() == result
+
+		templateEngine.clearTemplateCache()
+		result = render()
+		assert result.contains('LAYOUT-V2')
+		assert result.contains('NAV-V2')
+		assert render() == result
+		assert planCache.size() == 1
+	}
+
+	/**
+	 * Clearing Thymeleaf's template cache for a single template picks up
+	 * changes to the layouts looked up from it, as Thymeleaf caches those
+	 * against the template that looked them up.
+	 */
+	@Test
+	void clearTemplateCacheFor() {
+
+		assert render().contains('LAYOUT-V1')
+
+		writeLayout('V2')
+		templateEngine.clearTemplateCacheFor('Content')
+		def result = render()
+		assert result.contains('LAYOUT-V2')
+		assert render() == result
+	}
+}
@@ -17,6 +17,7 @@
 package nz.net.ultraq.thymeleaf.tests.models
 
 import nz.net.ultraq.thymeleaf.tests.LayoutDialect
+import nz.net.ultraq.thymeleaf.models.VariableDeclarationCache
 import nz.net.ultraq.thymeleaf.models.VariableDeclarationMerger
 
 import org.junit.BeforeClass
@@ -130,4 +131,48 @@ class VariableDeclarationMergerTests {
 
 		assert result == source
 	}
+
+	/**
+	 * Test that repeated names in the target are each overridden by the next
+	 * same-named declaration in the source, every time the values are merged.
+	 */
+	@Test
+	@SuppressWarnings('GStringExpressionWithinString')
+	void repeatedNames() {
+
+		def target = 'name1=${value1},name1=${value2}'
+		def source = 'name1=${value3},name2=${value4},name1=${value5}'
+
+		def merger = new VariableDeclarationMerger(context)
+		2.times {
+			def result = merger.merge(target, source)
+			assert result == 'name1=${value3},name1=${value5},name2=${value4}'
+		}
+	}
+
+	/**
+	 * Test that merged values are remembered by each template engine
+	 * separately, and that values are still merged without the layout dialect's
+	 * cache.
+	 */
+	@Test
+	@SuppressWarnings('GStringExpressionWithinString')
+	void cachePerConfiguration() {
+
+		def target = 'name=${value1}'
+		def source = 'name=${value2}'
+
+		def otherContext = new ExpressionContext(new TemplateEngine(
+			additionalDialects: [
+				new LayoutDialect()
+			]
+		).configuration)
+		def cache = VariableDeclarationCache.forConfiguration(context.configuration)
+		assert cache != null
+		assert !cache.is(VariableDeclarationCache.forConfiguration(otherContext.configuration))
+
+		def plainContext = new ExpressionContext(new TemplateEngine().configuration)
+		assert VariableDeclarationCache.forConfiguration(plainContext.configuration) == null
+		assert new VariableDeclarationMerger(plainContext).merge(target, source) == 'name=${value2}'
+	}
 }
@@ -19,6 +19,7 @@ package nz.net.ultraq.thymeleaf.tests.models.extensions
 import nz.net.ultraq.thymeleaf.tests.LayoutDialect
 import nz.net.ultraq.thymeleaf.models.ModelBuilder
 import nz.net.ultraq.thymeleaf.models.extensions.ChildModelIterator
+import nz.net.ultraq.thymeleaf.models.extensions.ModelView
 
 import org.junit.BeforeClass
 import org.junit.Test
@@ -87,4 +88,37 @@ class ChildModelIteratorTests {
 
 		assert childModelIterator.hasNext() == false
 	}
+
+	/**
+	 * Test that the child models are read-only views over the parent model that
+	 * can be copied into models of their own.
+	 */
+	@Test
+	void childModelViews() {
+
+		def pModel = modelBuilder.build {
+			p('Test paragraph')
+		}
+		def model = modelBuilder.build {
+			div(class: 'content') {
+				add(pModel)
+			}
+		}
+
+		def childModel = model.childModelIterator().next()
+		assert childModel instanceof ModelView
+		assert childModel.offset == 1
+		assert childModel.parent.is(model)
+
+		try {
+			childModel.add(model.first())
+			assert false
+		}
+		catch (UnsupportedOperationException ignored) {
+		}
+
+		def copy = childModel.cloneModel()
+		assert !(copy instanceof ModelView)
+		assert copy.equalsIgnoreWhitespace(pModel)
+	}
 }
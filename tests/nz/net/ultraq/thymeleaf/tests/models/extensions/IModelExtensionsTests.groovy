@@ -16,12 +16,14 @@
 
 package nz.net.ultraq.thymeleaf.tests.models.extensions
 
+import nz.net.ultraq.thymeleaf.internal.Extensions
 import nz.net.ultraq.thymeleaf.tests.LayoutDialect
 import nz.net.ultraq.thymeleaf.models.ModelBuilder
 
 import org.junit.BeforeClass
 import org.junit.Test
 import org.thymeleaf.TemplateEngine
+import org.thymeleaf.model.IModelFactory
 import org.thymeleaf.templatemode.TemplateMode
 
 /**
@@ -31,6 +33,7 @@ import org.thymeleaf.templatemode.TemplateMode
  */
 class IModelExtensionsTests {
 
+	private static IModelFactory modelFactory
 	private static ModelBuilder modelBuilder
 
 	/**
@@ -44,7 +47,8 @@ class IModelExtensionsTests {
 				new LayoutDialect()
 			]
 		)
-		modelBuilder = new ModelBuilder(templateEngine.configuration.getModelFactory(TemplateMode.HTML),
+		modelFactory = templateEngine.configuration.getModelFactory(TemplateMode.HTML)
+		modelBuilder = new ModelBuilder(modelFactory,
 			templateEngine.configuration.elementDefinitions, TemplateMode.HTML)
 	}
 
@@ -123,4 +127,94 @@ class IModelExtensionsTests {
 		def modelExtract = model.getModel(0)
 		assert modelExtract == model
 	}
+
+	/**
+	 * Test that whitespace checks on text events match trimming the text.
+	 */
+	@Test
+	void isWhitespaceText() {
+
+		['', ' ', '\n\t\t', '\u0000\u001f', 'text', '\n\tSome text\n'].each { text ->
+			def event = modelFactory.createText(text)
+			assert Extensions.isWhitespace(event) == text.trim().isEmpty()
+		}
+	}
+
+	/**
+	 * Test that models found within another know where they came from, even
+	 * when an identical model appears earlier.
+	 */
+	@Test
+	void findModelPosition() {
+
+		def model = modelBuilder.build {
+			head {
+				script(src: 'script.js')
+				link(rel: 'stylesheet', href: 'style.css', void: true)
+				script(src: 'script.js')
+			}
+		}
+
+		def children = Extensions.childModelIterator(model).collect()
+		assert Extensions.findIndexOfModel(model, children[0]) == 1
+		assert Extensions.findIndexOfModel(model, children[2]) == 4
+
+		def linkModel = Extensions.findModel(model) { event -> Extensions.isOpeningElementOf(event, 'link') }
+		assert linkModel.offset == 3
+		assert linkModel == model.getModel(3)
+	}
+
+	/**
+	 * Test replacing ranges of events anywhere in a model.
+	 */
+	@Test
+	void splice() {
+
+		def build = {
+			return modelBuilder.build {
+				div {
+					p('One')
+					p('Two')
+					p('Three')
+				}
+			}
+		}
+		def replacement = modelBuilder.build {
+			span('New')
+		}
+
+		def model = build()
+		Extensions.splice(model, 4, 3, replacement)
+		assert model == modelBuilder.build {
+			div {
+				p('One')
+				span('New')
+				p('Three')
+			}
+		}
+
+		model = build()
+		Extensions.splice(model, 1, 3, null)
+		assert model == modelBuilder.build {
+			div {
+				p('Two')
+				p('Three')
+			}
+		}
+
+		model = build()
+		Extensions.splice(model, 0, model.size(), replacement)
+		assert model == replacement
+
+		model = build()
+		Extensions.splice(model, 10, 0, replacement)
+		assert model == modelBuilder.build {
+			div {
+				p('One')
+				p('Two')
+				p('Three')
+				span('New')
+			}
+		}
+	}
 }
@@ -0,0 +1,154 @@
+/* 
+ * Copyright 2019 zhanhb.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nz.net.ultraq.thymeleaf.tests.models.extensions
+
+import nz.net.ultraq.thymeleaf.internal.IndexedModel
+import nz.net.ultraq.thymeleaf.internal.ModelIndex
+import nz.net.ultraq.thymeleaf.tests.LayoutDialect
+import nz.net.ultraq.thymeleaf.models.ModelBuilder
+
+import org.junit.BeforeClass
+import org.junit.Test
+import org.thymeleaf.TemplateEngine
+import org.thymeleaf.model.IOpenElementTag
+import org.thymeleaf.templatemode.TemplateMode
+
+/**
+ * Tests for the {@link ModelIndex} and {@link IndexedModel} classes.
+ * 
+ * @author zhanhb
+ */
+class ModelIndexTests {
+
+	private static ModelBuilder modelBuilder
+
+	/**
+	 * Set up, create a template engine.
+	 */
+	@BeforeClass
+	static void setupThymeleafEngine() {
+
+		def templateEngine = new TemplateEngine(
+			additionalDialects: [
+				new LayoutDialect()
+			]
+		)
+		modelBuilder = new ModelBuilder(templateEngine.configuration.getModelFactory(TemplateMode.HTML),
+			templateEngine.configuration.elementDefinitions, TemplateMode.HTML)
+	}
+
+	/**
+	 * Test that the index agrees with scanning the model for every position.
+	 */
+	@Test
+	void sizeOfModelAt() {
+
+		def model = modelBuilder.build {
+			html {
+				head {
+					meta(charset: 'utf-8', void: true)
+					meta(charset: 'utf-8')
+					title('Test title')
+				}
+				body {
+					div(class: 'content') {
+						hr(standalone: true)
+						p('Test paragraph')
+					}
+				}
+			}
+		}
+
+		def index = new ModelIndex(model)
+		def indexedModel = new IndexedModel(model)
+		assert index.size() == model.size()
+		model.size().times { i ->
+			assert index.sizeOfModelAt(i) == model.sizeOfModelAt(i)
+			assert indexedModel.sizeOfModelAt(i) == model.sizeOfModelAt(i)
+		}
+	}
+
+	/**
+	 * Test parent and child lookups.
+	 */
+	@Test
+	void parentsAndChildren() {
+
+		def model = modelBuilder.build {
+			div {
+				p('Test paragraph')
+				hr(standalone: true)
+			}
+		}
+
+		def index = new ModelIndex(model)
+		assert index.parentIndexOf(0) == -1
+		assert index.parentIndexOf(1) == 0
+		assert index.parentIndexOf(2) == 1
+		assert index.parentIndexOf(4) == 0
+		assert index.parentIndexOf(5) == -1
+		assert index.childRangeOf(0) == [1, 5] as int[]
+		assert index.childRangeOf(4) == [5, 5] as int[]
+		assert index.nextIndexOf(1) == 4
+	}
+
+	/**
+	 * Test that modifying an indexed model rebuilds its index.
+	 */
+	@Test
+	void modificationReindexes() {
+
+		def model = new IndexedModel(modelBuilder.build {
+			div {
+				p('Test paragraph')
+			}
+		})
+
+		assert model.sizeOfModelAt(0) == 5
+		model.insertModel(1, modelBuilder.build {
+			hr(standalone: true)
+		})
+		assert model.sizeOfModelAt(0) == 6
+	}
+
+	/**
+	 * Test that views over an indexed model, as given out by findModel and the
+	 * child model iterator, work out element sizes from the index.
+	 */
+	@Test
+	void viewsOverIndexedModel() {
+
+		def model = new IndexedModel(modelBuilder.build {
+			html {
+				head {
+					title('Title')
+					meta(charset: 'UTF-8', standalone: true)
+				}
+				body {
+					p('Test paragraph')
+				}
+			}
+		})
+
+		def head = model.findModel { event -> event instanceof IOpenElementTag && event.elementCompleteName == 'head' }
+		assert head.parent.is(model)
+		assert head.sizeOfModelAt(0) == head.size()
+		def children = head.childModelIterator().collect { it.toString() }
+		assert children == ['<title>Title</title>', '<meta charset="UTF-8"/>']
+		assert head.sizeOfModelAt(1) == 3
+	}
+}